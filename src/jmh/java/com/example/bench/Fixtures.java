@@ -0,0 +1,174 @@
+package com.example.bench;
+
+import com.example.AppConfig.AppConfig;
+import com.example.model.LogEntry;
+import com.example.model.LogEntryInterner;
+import com.example.service.LogStorageService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Offline inputs for the benchmarks.
+ * <p>
+ * Pages come from {@code fixtures/events-page-30.json} and {@code events-page-100.json},
+ * pages of the API's default and maximum size with full payloads: pull request events
+ * carrying both repositories, issue comments with their issue, and so on. Those two sizes
+ * are served as they are; larger pages cycle the 100-event page, rewriting {@code id} and
+ * {@code actor.login}, so they keep the shape and byte weight of the real feed. Stored histories use the same type mix, skewed actor and repo populations, and
+ * one event per second from {@link #START} in id order. Everything is seeded, so every
+ * run and every commit sees the same data.
+ */
+final class Fixtures {
+    /**
+     * A store format for the benchmarks: ndjson with small segments, all but the active
+     * one compressed by a compaction pass once the history is written.
+     */
+    static final String NDJSON_COMPRESSED = "ndjson-compressed";
+
+    static final int ACTORS = 50_000;
+    static final int REPOS = 20_000;
+    // created_at of the entry with id 0; entry n was created n seconds later
+    static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    // Roughly the mix of the public feed: mostly pushes
+    private static final String[] TYPE_MIX = {
+            "PushEvent", "PushEvent", "PushEvent", "PushEvent", "PushEvent",
+            "CreateEvent", "PullRequestEvent", "IssueCommentEvent", "WatchEvent", "DeleteEvent"
+    };
+
+    // Sizes of the page fixtures, in events
+    private static final int[] PAGE_FIXTURES = {30, 100};
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private Fixtures() {
+    }
+
+    /**
+     * A page of {@code events} events, serialized exactly as the API would send it.
+     */
+    static byte[] page(int events) throws IOException {
+        for (int size : PAGE_FIXTURES) {
+            if (size == events) {
+                return fixture(size);
+            }
+        }
+
+        ArrayNode recorded = pageFixture(PAGE_FIXTURES[PAGE_FIXTURES.length - 1]);
+        ArrayNode page = mapper.createArrayNode();
+        Random random = new Random(events);
+        long id = 40_000_000_000L;
+
+        for (int i = 0; i < events; i++) {
+            ObjectNode event = recorded.get(i % recorded.size()).deepCopy();
+            event.put("id", Long.toString(id - i));
+            ((ObjectNode) event.get("actor")).put("login", login(random));
+            page.add(event);
+        }
+        return mapper.writeValueAsBytes(page);
+    }
+
+    /**
+     * {@code count} entries with consecutive ids starting at {@code firstId}.
+     */
+    static List<LogEntry> entries(long firstId, int count) {
+        Random random = new Random(firstId);
+        List<LogEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new LogEntry(Long.toString(firstId + i),
+                    LogEntryInterner.type(TYPE_MIX[random.nextInt(TYPE_MIX.length)]),
+                    LogEntryInterner.actor(login(random)),
+                    LogEntryInterner.repo(repo(random)),
+                    START.plusSeconds(firstId + i).toString()));
+        }
+        return entries;
+    }
+
+    /**
+     * A store of the given format in a fresh temporary directory, holding {@code history} entries.
+     */
+    static LogStorageService store(Path directory, String format, int history) throws IOException {
+        LogStorageService storage = open(directory, format);
+        int batch = 10_000;
+        for (int written = 0; written < history; written += batch) {
+            storage.saveLogs(entries(1 + written, Math.min(batch, history - written)));
+        }
+        if (format.equals(NDJSON_COMPRESSED)) {
+            storage.compact();
+        }
+        return storage;
+    }
+
+    /**
+     * Opens the store {@link #store} built in {@code directory}, without writing to it.
+     */
+    static LogStorageService open(Path directory, String format) throws IOException {
+        AppConfig.StorageConfig config = new AppConfig.StorageConfig();
+        config.directory = directory.resolve("logs").toString();
+        config.legacyFile = directory.resolve("logs.json").toString();
+        config.format = format;
+        if (format.equals(NDJSON_COMPRESSED)) {
+            config.format = LogStorageService.FORMAT_NDJSON;
+            config.segmentMaxBytes = 8L * 1024 * 1024;
+        }
+        return new LogStorageService(config);
+    }
+
+    static void delete(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    // Squaring a uniform draw skews activity towards low-numbered actors, like bots in the real feed
+    private static String login(Random random) {
+        double r = random.nextDouble();
+        return "user-" + (int) (ACTORS * r * r);
+    }
+
+    private static String repo(Random random) {
+        double r = random.nextDouble();
+        return "org-" + (int) (REPOS * r * r) % 100 + "/repo-" + (int) (REPOS * r * r);
+    }
+
+    private static ArrayNode pageFixture(int size) throws IOException {
+        JsonNode page = mapper.readTree(fixture(size));
+        if (!page.isArray() || page.size() != size) {
+            throw new IOException("fixtures/events-page-" + size + ".json must be an array of " + size + " events");
+        }
+        return (ArrayNode) page;
+    }
+
+    private static byte[] fixture(int size) throws IOException {
+        String name = "fixtures/events-page-" + size + ".json";
+        try (InputStream in = Fixtures.class.getResourceAsStream("/" + name)) {
+            if (in == null) {
+                throw new IOException("Missing fixture " + name);
+            }
+            return in.readAllBytes();
+        }
+    }
+}
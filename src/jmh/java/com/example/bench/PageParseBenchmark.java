@@ -0,0 +1,53 @@
+package com.example.bench;
+
+import com.example.api.EventPageParser;
+import com.example.model.LogEntry;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing one API response body into entries: the streaming parser used by the client,
+ * against binding the whole page with databind as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PageParseBenchmark {
+
+    // 30 is the API's default page size, 100 its maximum
+    @Param({"30", "100", "1000"})
+    public int events;
+
+    private byte[] body;
+    private EventPageParser parser;
+    private ObjectMapper mapper;
+
+    @Setup
+    public void setUp() throws IOException {
+        body = Fixtures.page(events);
+        parser = new EventPageParser(new JsonFactory());
+        mapper = new ObjectMapper();
+    }
+
+    @Benchmark
+    public List<LogEntry> streamingParser() throws IOException {
+        return parser.parse(body);
+    }
+
+    @Benchmark
+    public LogEntry[] databind() throws IOException {
+        return mapper.readValue(body, LogEntry[].class);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.bench;
+
+import com.example.model.LogEntry;
+import com.example.service.LogQuery;
+import com.example.service.LogStorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The queries behind {@code --display}, {@code --count} and {@code --stats}, run
+ * sequentially so results do not depend on the machine's core count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryBenchmark {
+
+    @Param({"ndjson", Fixtures.NDJSON_COMPRESSED, "columnar"})
+    public String format;
+
+    @Param({"100000", "1000000"})
+    public int history;
+
+    private static final LogQuery PUSH_EVENTS = new LogQuery("PushEvent", null);
+    // Matches a handful of the 50,000 actors
+    private static final LogQuery RARE_ACTOR = new LogQuery(null, "user-4999");
+    private static final LogQuery EVERYTHING = new LogQuery(null, null);
+    private static final LogQuery ONE_REPO = new LogQuery(null, null, "org-99/repo-4999", null, null);
+
+    private Path directory;
+    private LogStorageService storage;
+    // The newest 1% of the history, by created_at
+    private LogQuery newestPercent;
+
+    @Setup(Level.Trial)
+    public void createStore() throws IOException {
+        directory = Files.createTempDirectory("bench-query");
+        storage = Fixtures.store(directory, format, history);
+        newestPercent = new LogQuery(null, null, null, Fixtures.START.plusSeconds(history - history / 100), null);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStore() throws IOException {
+        storage.close();
+        Fixtures.delete(directory);
+    }
+
+    /**
+     * {@code --display --type PushEvent --limit 10}: should stop reading after the first matches.
+     */
+    @Benchmark
+    public List<LogEntry> typeFilterLimit10() throws IOException {
+        return storage.queryLogs(PUSH_EVENTS, 1, logs -> logs.limit(10).collect(Collectors.toList()));
+    }
+
+    /**
+     * {@code --display --actor user-4999}: a selective filter over the whole history.
+     */
+    @Benchmark
+    public List<LogEntry> actorFilter() throws IOException {
+        return storage.findLogs(RARE_ACTOR);
+    }
+
+    /**
+     * {@code --display --repo org-99/repo-4999}: answered from the repo index or column.
+     */
+    @Benchmark
+    public List<LogEntry> repoFilter() throws IOException {
+        return storage.findLogs(ONE_REPO);
+    }
+
+    /**
+     * {@code --count --since ...} over the newest 1%: blocks outside the window are skipped.
+     */
+    @Benchmark
+    public long countTimeWindow() throws IOException {
+        return storage.countLogs(newestPercent, 1);
+    }
+
+    @Benchmark
+    public long countByType() throws IOException {
+        return storage.countLogs(PUSH_EVENTS, 1);
+    }
+
+    @Benchmark
+    public long countAll() throws IOException {
+        return storage.countLogs(EVERYTHING, 1);
+    }
+
+    @Benchmark
+    public Object exactStats() throws IOException {
+        return storage.statsFor(EVERYTHING, 10, false, 1);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.bench;
+
+import com.example.cli.LogRenderer;
+import com.example.model.LogEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing query results for {@code --display}: the {@code --output} renderers, against
+ * printing each entry's {@code toString()} to an autoflushing {@link PrintStream} as a
+ * baseline. Output goes to a stream that discards it, so only formatting and buffering
+ * are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RenderBenchmark {
+
+    // "println" is the baseline
+    @Param({"println", "text", "ndjson", "csv"})
+    public String format;
+
+    private List<LogEntry> entries;
+
+    @Setup
+    public void setUp() {
+        entries = Fixtures.entries(1, 100_000);
+    }
+
+    @Benchmark
+    public void render() throws IOException {
+        if (format.equals("println")) {
+            // Like System.out: flushed on every line
+            PrintStream out = new PrintStream(OutputStream.nullOutputStream(), true);
+            for (LogEntry entry : entries) {
+                out.println(entry.toString());
+            }
+            out.flush();
+            return;
+        }
+        try (LogRenderer renderer = LogRenderer.create(format, OutputStream.nullOutputStream())) {
+            for (LogEntry entry : entries) {
+                renderer.render(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.bench;
+
+import com.example.model.LogEntry;
+import com.example.service.LogStorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appending one page of new events to a store that already holds {@code history}
+ * entries, which is what every fetched page costs. The store grows by one page per
+ * invocation; against the larger histories that drift is negligible.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StorageAppendBenchmark {
+
+    @Param({"ndjson", "columnar"})
+    public String format;
+
+    @Param({"10000", "100000", "1000000"})
+    public int history;
+
+    private static final int PAGE = 100;
+
+    private Path directory;
+    private LogStorageService storage;
+    private long nextId;
+    private List<LogEntry> page;
+
+    @Setup(Level.Trial)
+    public void createStore() throws IOException {
+        directory = Files.createTempDirectory("bench-append");
+        storage = Fixtures.store(directory, format, history);
+        nextId = history + 1L;
+    }
+
+    @Setup(Level.Invocation)
+    public void nextPage() {
+        page = Fixtures.entries(nextId, PAGE);
+        nextId += PAGE;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStore() throws IOException {
+        storage.close();
+        Fixtures.delete(directory);
+    }
+
+    @Benchmark
+    public int appendPage() throws IOException {
+        return storage.saveLogs(page);
+    }
+
+    /**
+     * A page that is already stored: only the id lookups, nothing written.
+     */
+    @Benchmark
+    public int appendDuplicatePage() throws IOException {
+        return storage.saveLogs(Fixtures.entries(1, PAGE));
+    }
+}
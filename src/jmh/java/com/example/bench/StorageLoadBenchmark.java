@@ -0,0 +1,67 @@
+package com.example.bench;
+
+import com.example.model.LogEntry;
+import com.example.service.LogStorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a store and reading the whole history back. The store is written once per
+ * trial; {@link #open} opens it again on every invocation and closes what it opened.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StorageLoadBenchmark {
+
+    @Param({"ndjson", Fixtures.NDJSON_COMPRESSED, "columnar"})
+    public String format;
+
+    @Param({"10000", "100000", "1000000"})
+    public int history;
+
+    private Path directory;
+    private LogStorageService storage;
+
+    @Setup(Level.Trial)
+    public void createStore() throws IOException {
+        directory = Files.createTempDirectory("bench-load");
+        storage = Fixtures.store(directory, format, history);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStore() throws IOException {
+        storage.close();
+        Fixtures.delete(directory);
+    }
+
+    @Benchmark
+    public List<LogEntry> loadAll() {
+        return storage.loadLogs();
+    }
+
+    /**
+     * Startup cost: opening the existing store and rebuilding whatever it keeps in memory.
+     */
+    @Benchmark
+    public void open(Blackhole blackhole) throws IOException {
+        try (LogStorageService reopened = Fixtures.open(directory, format)) {
+            blackhole.consume(reopened);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local stand-in for the GitHub events API, serving synthetic feeds on the loopback
+ * interface.
+ * <p>
+ * {@code /events} and {@code /repos/load/repo-<n>/events} are feeds of
+ * {@link Scenario#pages} pages of {@link Scenario#eventsPerPage} events each, newest
+ * first, with a {@code Link} header to the next page like GitHub's; pages past the last
+ * are empty. Every other path is a {@code 404}. Each feed has its own id range and a
+ * page is the same on every request, so retried requests see what the first attempt
+ * would have.
+ * <p>
+ * Faults follow the scenario: a fixed latency plus random jitter on every response,
+ * every {@link Scenario#serverErrorEvery}th request answered with a 500, 502 or 503,
+ * and a quota of {@link Scenario#rateLimit} requests per window, reported in the
+ * {@code X-RateLimit-*} headers and enforced with {@code 403}s once spent. Without a
+ * quota the rate-limit headers are left out. Responses are gzipped when the client
+ * accepts it, as GitHub's are.
+ */
+public class GitHubStandIn implements Closeable {
+    private static final Pattern REPO_FEED = Pattern.compile("/repos/load/repo-(\\d+)/events");
+    private static final long FIRST_ID = 40_000_000_000L;
+    private static final String[] TYPES = {
+            "PushEvent", "PushEvent", "PushEvent", "PushEvent", "PushEvent",
+            "CreateEvent", "PullRequestEvent", "IssueCommentEvent", "WatchEvent", "DeleteEvent"
+    };
+
+    /**
+     * What the stand-in serves and which faults it injects.
+     */
+    public static class Scenario {
+        public int pages = 10;
+        public int eventsPerPage = 100;
+        // Size of the filler in each event's payload; real events are mostly 1-3 KB
+        public int payloadBytes = 1000;
+        public int latencyMs = 0;
+        // Up to this much is added to the latency of each response
+        public int latencyJitterMs = 0;
+        // Every Nth request fails with a 500, 502 or 503; 0 for none
+        public int serverErrorEvery = 0;
+        // Requests per window before 403s; 0 for no quota
+        public int rateLimit = 0;
+        // GitHub's quotas last an hour from the first request
+        public int rateLimitWindowSeconds = 3600;
+        public boolean gzip = true;
+        public long seed = 1;
+    }
+
+    private final Scenario scenario;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Instant newest = Instant.now();
+    private final String filler;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong serverErrors = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    private long windowEnd;
+    private int windowRemaining;
+
+    private GitHubStandIn(Scenario scenario, HttpServer server, ExecutorService executor) {
+        this.scenario = scenario;
+        this.server = server;
+        this.executor = executor;
+        StringBuilder filler = new StringBuilder(scenario.payloadBytes);
+        for (int i = 0; i < scenario.payloadBytes; i++) {
+            filler.append((char) ('a' + i % 26));
+        }
+        this.filler = filler.toString();
+    }
+
+    /**
+     * Starts serving on {@code port} of the loopback interface; 0 picks a free port.
+     */
+    public static GitHubStandIn start(Scenario scenario, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "github-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        GitHubStandIn standIn = new GitHubStandIn(scenario, server, executor);
+        server.createContext("/", standIn::handle);
+        server.setExecutor(executor);
+        server.start();
+        return standIn;
+    }
+
+    /**
+     * The absolute URL of {@code path} on this server.
+     */
+    public String url(String path) {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getServed() {
+        return served.get();
+    }
+
+    public long getServerErrors() {
+        return serverErrors.get();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public long getNotFound() {
+        return notFound.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            long request = requests.incrementAndGet();
+            delay();
+
+            URI uri = exchange.getRequestURI();
+            int feed = feedOf(uri.getPath());
+            if (feed < 0) {
+                notFound.incrementAndGet();
+                respond(exchange, 404, "{\"message\":\"Not Found\"}");
+                return;
+            }
+            if (scenario.serverErrorEvery > 0 && request % scenario.serverErrorEvery == 0) {
+                serverErrors.incrementAndGet();
+                int[] statuses = {500, 502, 503};
+                respond(exchange, statuses[(int) (request / scenario.serverErrorEvery % statuses.length)],
+                        "{\"message\":\"Server Error\"}");
+                return;
+            }
+            if (scenario.rateLimit > 0) {
+                long now = System.currentTimeMillis();
+                int remaining;
+                long reset;
+                synchronized (this) {
+                    if (now >= windowEnd) {
+                        windowEnd = now + TimeUnit.SECONDS.toMillis(scenario.rateLimitWindowSeconds);
+                        windowRemaining = scenario.rateLimit;
+                    }
+                    remaining = --windowRemaining;
+                    reset = (windowEnd + 999) / 1000;
+                }
+                exchange.getResponseHeaders().set("X-RateLimit-Limit", Integer.toString(scenario.rateLimit));
+                exchange.getResponseHeaders().set("X-RateLimit-Remaining", Integer.toString(Math.max(0, remaining)));
+                exchange.getResponseHeaders().set("X-RateLimit-Reset", Long.toString(reset));
+                if (remaining < 0) {
+                    rateLimited.incrementAndGet();
+                    respond(exchange, 403, "{\"message\":\"API rate limit exceeded for 127.0.0.1.\"}");
+                    return;
+                }
+            }
+
+            int page = pageOf(uri.getQuery());
+            if (page < scenario.pages) {
+                String feedUrl = url(uri.getPath());
+                exchange.getResponseHeaders().set("Link", String.format(
+                        "<%s?page=%d>; rel=\"next\", <%s?page=%d>; rel=\"last\"", feedUrl, page + 1, feedUrl, scenario.pages));
+            }
+            exchange.getResponseHeaders().set("ETag", String.format("W/\"%d-%d\"", feed, page));
+            exchange.getResponseHeaders().set("X-Poll-Interval", "60");
+            served.incrementAndGet();
+            respond(exchange, 200, page <= scenario.pages ? renderPage(feed, page) : "[]");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() {
+        int millis = scenario.latencyMs
+                + (scenario.latencyJitterMs > 0 ? ThreadLocalRandom.current().nextInt(scenario.latencyJitterMs + 1) : 0);
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Feed number of a path: 0 for {@code /events}, n + 1 for {@code /repos/load/repo-n/events}, -1 otherwise.
+     */
+    private static int feedOf(String path) {
+        if (path.equals("/events")) {
+            return 0;
+        }
+        Matcher matcher = REPO_FEED.matcher(path);
+        if (matcher.matches()) {
+            try {
+                return Integer.parseInt(matcher.group(1)) + 1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int pageOf(String query) {
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("page=")) {
+                    try {
+                        return Math.max(1, Integer.parseInt(parameter.substring(5)));
+                    } catch (NumberFormatException e) {
+                        return 1;
+                    }
+                }
+            }
+        }
+        return 1;
+    }
+
+    private String renderPage(int feed, int page) {
+        Random random = new Random(scenario.seed * 1_000_003L + (long) feed * 10_007L + page);
+        long firstIndex = (long) (page - 1) * scenario.eventsPerPage;
+        long firstId = FIRST_ID - (long) feed * 1_000_000_000L - firstIndex;
+        StringBuilder json = new StringBuilder(scenario.eventsPerPage * (scenario.payloadBytes + 400)).append('[');
+
+        for (int i = 0; i < scenario.eventsPerPage; i++) {
+            double r = random.nextDouble();
+            int actor = (int) (50_000 * r * r);
+            int repo = random.nextInt(20_000);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(firstId - i)
+                    .append("\",\"type\":\"").append(TYPES[random.nextInt(TYPES.length)])
+                    .append("\",\"actor\":{\"id\":").append(actor)
+                    .append(",\"login\":\"user-").append(actor)
+                    .append("\",\"display_login\":\"user-").append(actor)
+                    .append("\",\"url\":\"https://api.github.com/users/user-").append(actor)
+                    .append("\"},\"repo\":{\"id\":").append(repo)
+                    .append(",\"name\":\"org-").append(repo % 100).append("/repo-").append(repo)
+                    .append("\",\"url\":\"https://api.github.com/repos/org-").append(repo % 100)
+                    .append("/repo-").append(repo)
+                    .append("\"},\"payload\":{\"push_id\":").append(random.nextInt(Integer.MAX_VALUE))
+                    .append(",\"size\":1,\"ref\":\"refs/heads/main\",\"description\":\"").append(filler)
+                    .append("\"},\"public\":true,\"created_at\":\"")
+                    .append(newest.minusSeconds(firstIndex + i).toString())
+                    .append("\"}");
+        }
+        return json.append(']').toString();
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (scenario.gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        bytesSent.addAndGet(bytes.length);
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.loadtest;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.example.AppConfig.AppConfig;
+import com.example.AppConfig.ConfigLoader;
+import com.example.api.ApiClient;
+import com.example.api.RateLimiter;
+import com.example.service.LogStorageService;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end ingestion load test: a full {@code --fetch} run, through the same
+ * {@link ApiClient}, pipeline and storage, against a {@link GitHubStandIn} on this
+ * machine, into a scratch storage directory.
+ * <p>
+ * Settings come from the usual config file, with the API pointed at the stand-in,
+ * the fetch state kept in memory and the storage in a temporary directory, so the
+ * run exercises the configured retry, rate-limit and storage behaviour without
+ * touching real data or the real quota. Reports events stored per second, the p50 and
+ * p99 request latency as the client saw it, and the bytes written: event data apart
+ * from indexes.
+ * <p>
+ * A quota window lasts an hour by default, as GitHub's does, so a run that spends the
+ * quota shows what production would: the client paces requests, spends its reserve
+ * early and then waits for the reset. {@code --timeout-seconds} ends such a run as failed
+ * rather than sitting out the hour.
+ */
+@Command(name = "loadtest", mixinStandardHelpOptions = true,
+        description = "Runs a full fetch against a local GitHub events stand-in and reports throughput.")
+public class IngestionLoadTest implements Callable<Integer> {
+
+    @Option(names = "--sources", description = "Feeds fetched at once (default: 1)")
+    int sources = 1;
+
+    @Option(names = "--missing-sources", description = "Extra feeds that answer 404 (default: 0)")
+    int missingSources;
+
+    @Option(names = "--pages", description = "Pages per feed (default: 10)")
+    int pages = 10;
+
+    @Option(names = "--events-per-page", description = "Events per page (default: 100)")
+    int eventsPerPage = 100;
+
+    @Option(names = "--payload-bytes", description = "Filler bytes in each event's payload (default: 1000)")
+    int payloadBytes = 1000;
+
+    @Option(names = "--latency-ms", description = "Latency added to every response (default: 0)")
+    int latencyMs;
+
+    @Option(names = "--jitter-ms", description = "Random extra latency, up to this much (default: 0)")
+    int jitterMs;
+
+    @Option(names = "--error-every", description = "Answer every Nth request with a 5xx; 0 for none (default: 0)")
+    int errorEvery;
+
+    @Option(names = "--rate-limit", description = "Requests per window before 403s, e.g. GitHub's 5000 with a token"
+            + " or 60 without; 0 for no quota (default: 0)")
+    int rateLimit;
+
+    @Option(names = "--rate-window-seconds", description = "Length of the rate-limit window (default: 3600, as GitHub's)")
+    int rateWindowSeconds = 3600;
+
+    @Option(names = "--timeout-seconds", description = "Stop the fetch and fail after this long; 0 for no limit (default: 600)")
+    int timeoutSeconds = 600;
+
+    @Option(names = "--no-gzip", description = "Send uncompressed responses")
+    boolean noGzip;
+
+    @Option(names = "--config", description = "Config file for the client and storage (default: src/config.yaml)")
+    String configFile = "src/config.yaml";
+
+    @Option(names = "--format", description = "Storage format, ndjson or columnar (default: from the config)")
+    String format;
+
+    @Option(names = "--serve-only",
+            description = "Only run the stand-in, until stopped, e.g. to point --fetch at it by hand")
+    boolean serveOnly;
+
+    @Option(names = "--port", description = "Port for the stand-in; 0 for any free port (default: 0)")
+    int port;
+
+    @Option(names = "--keep", description = "Keep the storage directory and print where it is")
+    boolean keep;
+
+    public static void main(String[] args) {
+        System.exit(new CommandLine(new IngestionLoadTest()).execute(args));
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        GitHubStandIn.Scenario scenario = new GitHubStandIn.Scenario();
+        scenario.pages = pages;
+        scenario.eventsPerPage = eventsPerPage;
+        scenario.payloadBytes = payloadBytes;
+        scenario.latencyMs = latencyMs;
+        scenario.latencyJitterMs = jitterMs;
+        scenario.serverErrorEvery = errorEvery;
+        scenario.rateLimit = rateLimit;
+        scenario.rateLimitWindowSeconds = rateWindowSeconds;
+        scenario.gzip = !noGzip;
+
+        try (GitHubStandIn standIn = GitHubStandIn.start(scenario, port)) {
+            if (serveOnly) {
+                System.out.println("Serving synthetic events at " + standIn.url("/events") + "; stop with Ctrl-C");
+                Thread.currentThread().join();
+                return 0;
+            }
+
+            Path directory = Files.createTempDirectory("loadtest");
+            try {
+                return run(standIn, directory);
+            } finally {
+                if (keep) {
+                    System.out.println("Storage kept in " + directory);
+                } else {
+                    deleteRecursively(directory);
+                }
+            }
+        }
+    }
+
+    private int run(GitHubStandIn standIn, Path directory) throws IOException {
+        AppConfig config = ConfigLoader.loadConfig(configFile);
+        config.api.baseUrl = standIn.url("/events");
+        config.api.sources = feeds();
+        config.ingest.stateFile = "";
+        config.storage.directory = directory.resolve("logs").toString();
+        config.storage.legacyFile = directory.resolve("logs.json").toString();
+        if (format != null) {
+            config.storage.format = format;
+        }
+        config.metrics.summary = false;
+
+        MetricRegistry metrics = new MetricRegistry();
+        LogStorageService storage = new LogStorageService(config.storage, metrics);
+        RateLimiter rateLimiter = new RateLimiter(config.api.rateLimitReserve, config.api.rateLimitWaitSeconds);
+
+        // Waits for the quota end on interrupt, like any other wait in the client
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread fetching = Thread.currentThread();
+        if (timeoutSeconds > 0) {
+            timer.schedule(() -> {
+                timedOut.set(true);
+                fetching.interrupt();
+            }, timeoutSeconds, TimeUnit.SECONDS);
+        }
+
+        long started = System.nanoTime();
+        Exception failure = null;
+        try (ApiClient client = new ApiClient(config, storage, rateLimiter, metrics)) {
+            client.fetchAllPages();
+        } catch (Exception e) {
+            failure = e;
+        } finally {
+            timer.shutdownNow();
+            // Clears an interrupt that came after the fetch ended
+            Thread.interrupted();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        Path storageDirectory = Paths.get(config.storage.directory);
+        long[] written = diskUsage(storageDirectory);
+        storage.compact();
+        long[] compacted = diskUsage(storageDirectory);
+        storage.close();
+
+        long stored = metrics.meter(MetricRegistry.name(LogStorageService.class, "stored")).getCount();
+        long expected = (long) sources * pages * eventsPerPage;
+        Snapshot latency = metrics.timer(MetricRegistry.name(ApiClient.class, "requests")).getSnapshot();
+        long requests = metrics.timer(MetricRegistry.name(ApiClient.class, "requests")).getCount();
+        long rateLimitWaits = metrics.counter(MetricRegistry.name(ApiClient.class, "rate-limited")).getCount();
+        Snapshot quotaWaits = metrics.timer(MetricRegistry.name(ApiClient.class, "rate-limit-wait")).getSnapshot();
+
+        System.out.printf("Scenario:    %d feeds (+%d missing) x %d pages x %d events, latency %d+%d ms, "
+                        + "5xx every %s, quota %s, storage %s%n",
+                sources, missingSources, pages, eventsPerPage, latencyMs, jitterMs,
+                errorEvery > 0 ? errorEvery + " requests" : "never",
+                rateLimit > 0 ? rateLimit + " per " + rateWindowSeconds + " s" : "none",
+                config.storage.format);
+        System.out.printf("Stand-in:    %d requests, %d served, %d server errors, %d rate limited, %d not found, %.1f MB sent%n",
+                standIn.getRequests(), standIn.getServed(), standIn.getServerErrors(), standIn.getRateLimited(),
+                standIn.getNotFound(), standIn.getBytesSent() / 1e6);
+        String outcome = failure == null ? "completed"
+                : timedOut.get() ? "FAILED (stopped after " + timeoutSeconds + " s)"
+                : "FAILED (" + failure.getMessage() + ")";
+        System.out.printf("Fetch:       %s in %.2f s, %d requests, %d rate-limit waits, longest quota wait %.1f s%n",
+                outcome, seconds, requests, rateLimitWaits, quotaWaits.getMax() / 1e9);
+        System.out.printf("Throughput:  %d of %d events stored, %.0f events/s%n", stored, expected, stored / seconds);
+        System.out.printf("Latency:     p50 %.1f ms, p99 %.1f ms, max %.1f ms (per request, to the last byte)%n",
+                millis(latency.getMedian()), millis(latency.get99thPercentile()), millis(latency.getMax()));
+        System.out.printf("Written:     %.1f MB of events (%.0f bytes/event) and %.1f MB of indexes; "
+                        + "%.1f MB and %.1f MB after compaction%n",
+                written[0] / 1e6, stored > 0 ? (double) written[0] / stored : 0, written[1] / 1e6,
+                compacted[0] / 1e6, compacted[1] / 1e6);
+        return failure == null ? 0 : 1;
+    }
+
+    private List<String> feeds() {
+        List<String> feeds = new ArrayList<>();
+        feeds.add("/events");
+        for (int i = 1; i < sources; i++) {
+            feeds.add("/repos/load/repo-" + i + "/events");
+        }
+        for (int i = 1; i <= missingSources; i++) {
+            feeds.add("/repos/missing/repo-" + i + "/events");
+        }
+        return feeds;
+    }
+
+    /**
+     * Bytes in the storage directory: event data (segments, or the columns and their
+     * dictionaries), then everything else, such as the id and secondary indexes, zone
+     * maps and the committed row count.
+     */
+    private static long[] diskUsage(Path directory) throws IOException {
+        long[] bytes = new long[2];
+        if (!Files.isDirectory(directory)) {
+            return bytes;
+        }
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) walk.filter(Files::isRegularFile)::iterator) {
+                bytes[isEventData(directory, file) ? 0 : 1] += Files.size(file);
+            }
+        }
+        return bytes;
+    }
+
+    private static boolean isEventData(Path directory, Path file) {
+        if (!directory.equals(file.getParent())) {
+            return false;
+        }
+        String name = file.getFileName().toString();
+        return name.startsWith("segment-") || name.endsWith(".dict")
+                || (name.endsWith(".col") && !name.equals("zones.col"));
+    }
+
+    private static double millis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+}
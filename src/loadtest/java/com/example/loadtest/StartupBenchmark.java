@@ -0,0 +1,134 @@
+package com.example.loadtest;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Wall-clock time of whole CLI runs, from starting the JVM to its exit, the way
+ * scripts invoke it: once with the default JVM flags and, when a class-data sharing
+ * archive has been built, once with it.
+ * <p>
+ * Runs alternate between the variants so that a change in the machine's load hits
+ * both equally, and output is discarded so that the terminal is not measured. The
+ * first few runs of each variant only warm the file system cache.
+ */
+@Command(name = "startup", mixinStandardHelpOptions = true,
+        description = "Times complete runs of the CLI jar, with and without a CDS archive.")
+public class StartupBenchmark implements Callable<Integer> {
+
+    @Option(names = "--jar", required = true, description = "The application jar")
+    String jar;
+
+    @Option(names = "--archive", description = "CDS archive built for the jar; skipped if missing")
+    String archive;
+
+    @Option(names = "--java", description = "java executable (default: the one running this benchmark)")
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+    @Option(names = "--runs", description = "Measured runs per variant (default: 20)")
+    int runs = 20;
+
+    @Option(names = "--warmup", description = "Unmeasured runs per variant first (default: 3)")
+    int warmup = 3;
+
+    @Parameters(description = "Arguments for the CLI, after -- (default: --count)")
+    List<String> cliArgs;
+
+    public static void main(String[] args) {
+        System.exit(new CommandLine(new StartupBenchmark()).execute(args));
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        if (runs < 1) {
+            System.err.println("Error: --runs must be at least 1");
+            return 1;
+        }
+        if (cliArgs == null || cliArgs.isEmpty()) {
+            cliArgs = Collections.singletonList("--count");
+        }
+
+        Map<String, List<String>> variants = new LinkedHashMap<>();
+        variants.put("default", command());
+        if (archive != null && Files.isRegularFile(Paths.get(archive))) {
+            variants.put("cds", command("-XX:SharedArchiveFile=" + archive));
+        } else if (archive != null) {
+            System.out.println("No CDS archive at " + archive + "; build it with ./gradlew cdsArchive");
+        }
+
+        Map<String, long[]> times = new LinkedHashMap<>();
+        for (String variant : variants.keySet()) {
+            times.put(variant, new long[runs]);
+        }
+        for (int run = -warmup; run < runs; run++) {
+            for (Map.Entry<String, List<String>> variant : variants.entrySet()) {
+                long elapsed = time(variant.getValue());
+                if (elapsed < 0) {
+                    System.err.println("Error: '" + String.join(" ", variant.getValue()) + "' exited with status "
+                            + (-elapsed));
+                    return 1;
+                }
+                if (run >= 0) {
+                    times.get(variant.getKey())[run] = elapsed;
+                }
+            }
+        }
+
+        System.out.printf("%d runs of: %s%n", runs, String.join(" ", cliArgs));
+        System.out.printf("%-10s %10s %10s %10s %10s%n", "variant", "min ms", "median ms", "p90 ms", "max ms");
+        for (Map.Entry<String, long[]> variant : times.entrySet()) {
+            long[] sorted = variant.getValue().clone();
+            Arrays.sort(sorted);
+            System.out.printf("%-10s %10.1f %10.1f %10.1f %10.1f%n", variant.getKey(), millis(sorted[0]),
+                    millis(sorted[sorted.length / 2]), millis(sorted[(int) Math.ceil(sorted.length * 0.9) - 1]),
+                    millis(sorted[sorted.length - 1]));
+        }
+        return 0;
+    }
+
+    private List<String> command(String... jvmArgs) {
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(Arrays.asList(jvmArgs));
+        command.add("-jar");
+        command.add(jar);
+        command.addAll(cliArgs);
+        return command;
+    }
+
+    /**
+     * Nanoseconds from starting {@code command} to its exit, or minus its exit status if it failed.
+     */
+    private static long time(List<String> command) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .redirectInput(ProcessBuilder.Redirect.from(new File(nullDevice())));
+        long started = System.nanoTime();
+        int status = builder.start().waitFor();
+        long elapsed = System.nanoTime() - started;
+        return status == 0 ? elapsed : -status;
+    }
+
+    private static String nullDevice() {
+        return System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null";
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -2,21 +2,100 @@ package com.example.AppConfig;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class AppConfig {
     public ApiConfig api;
     public FilterConfig filter;
+    public StorageConfig storage = new StorageConfig();
+    public IngestConfig ingest = new IngestConfig();
+    public MetricsConfig metrics = new MetricsConfig();
+    public ServerConfig server = new ServerConfig();
 
     public static class ApiConfig {
         public String baseUrl;
+        // Feeds fetched together by --fetch, resolved against baseUrl; empty for baseUrl alone
+        public List<String> sources = new ArrayList<>();
         public int maxRetries;
+        // Longest a request is held back to spread the budget; waits for an exhausted one are not capped
         public int rateLimitWaitSeconds;
+        // Share of the rate limit kept back and handed out evenly until the window resets
+        public double rateLimitReserve = 0.2;
         public long retryDelayMs;
+        public long retryMaxDelayMs = 30000;
+        // Backoff jitter: "none", "full" or "decorrelated"
+        public String retryJitter = "full";
+        // Retries allowed per minute across all requests, on top of first attempts
+        public int retryBudgetPerMinute = 30;
+        // Consecutive failures that open the circuit, and how long it then fails fast
+        public int circuitFailureThreshold = 5;
+        public int circuitOpenSeconds = 30;
+        public int connectTimeoutMs = 5000;
+        public int readTimeoutMs = 30000;
+        public int maxConnections = 20;
+        public int maxConnectionsPerRoute = 10;
+        public int keepAliveSeconds = 60;
+        public int minPollIntervalSeconds = 60;
     }
 
     public static class FilterConfig {
         public String type;
     }
 
+    public static class StorageConfig {
+        public String directory = "logs";
+        public String legacyFile = "logs.json";
+        public long segmentMaxBytes = 64L * 1024 * 1024;
+        // "ndjson" (segmented, indexed) or "columnar" (binary, dictionary-encoded)
+        public String format = "ndjson";
+        // The settings below apply to the ndjson format only; columnar warns about those that are set.
+        // Codec for sealed segments: "deflate", or "none" to keep them as plain NDJSON
+        public String compression = "deflate";
+        // Uncompressed bytes per compressed block; a read decompresses only the blocks it needs
+        public int compressionBlockBytes = 64 * 1024;
+        // How often --follow and --serve compact in the background; --fetch compacts once when done
+        public int compactionIntervalSeconds = 300;
+        // Whole sealed segments last written longer ago are dropped; 0 keeps everything
+        public int retentionHours = 0;
+        // The oldest sealed segments are dropped while the storage directory is larger, indexes
+        // included; the id index keeps 8 bytes per event ever stored, so leave room for it. 0 for no limit
+        public long retentionMaxBytes = 0;
+    }
+
+    public static class IngestConfig {
+        public int queueCapacity = 4;
+        // Pages stored per write; with a stateFile every page is stored and saved on its own
+        public int writeBatchPages = 8;
+        // Sources fetched at once, on virtual threads or (before Java 21) a pool of platform threads
+        public int maxConcurrentSources = 8;
+        // Per-source cursor and high-watermark kept between runs; empty to always fetch every page
+        public String stateFile = "fetch-state.json";
+    }
+
+    public static class MetricsConfig {
+        // Print all metrics when a fetch completes
+        public boolean summary = true;
+        // Expose metrics as MBeans under the "log-parser" domain
+        public boolean jmx = true;
+        // Directory for one CSV file per metric; empty to disable
+        public String csvDirectory = "";
+        public int csvPeriodSeconds = 10;
+    }
+
+    public static class ServerConfig {
+        public int port = 8080;
+        // Health checks and metrics
+        public int adminPort = 8081;
+        // How often to look for events written by other processes; 0 to never reload
+        public int reloadSeconds = 30;
+        public int defaultPageSize = 100;
+        public int maxPageSize = 1000;
+        // Rendered responses kept in memory, and how long clients may cache them
+        public int responseCacheEntries = 256;
+        public int maxAgeSeconds = 5;
+    }
+
 
 }
@@ -7,8 +7,10 @@ import java.io.File;
 import java.io.IOException;
 
 public class ConfigLoader {
+    // Building a YAML mapper is most of the cost of loading a config, so it is built once
+    private static final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+
     public static AppConfig loadConfig(String path) throws IOException {
-        ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
         return mapper.readValue(new File(path), AppConfig.class);
     }
 }
@@ -1,186 +1,494 @@
 package com.example.api;
 
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.example.AppConfig.AppConfig;
-import com.example.AppConfig.ConfigLoader;
 import com.example.model.LogEntry;
 import com.example.service.LogStorageService;
+import com.example.utils.CircuitBreaker;
+import com.example.utils.RetryBudget;
 import com.example.utils.RetryHandler;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
 import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.ProtocolException;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class ApiClient {
+public class ApiClient implements Closeable {
     private static final Logger logger = Logger.getLogger(ApiClient.class.getName());
+    // Longest wait between polls while they keep failing
+    private static final long MAX_FOLLOW_BACKOFF_SECONDS = 900;
 
     private final String baseUrl;
     private final LogStorageService storage;
-    private final ObjectMapper mapper;
+    private final EventPageParser pageParser;
     private final AppConfig config;
     private final RetryHandler retryHandler;
+    private final RateLimiter rateLimiter;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final MetricRegistry metrics;
+    private final Timer requestTime;
+    private final Histogram responseBytes;
+    private final Timer rateLimitWait;
+    private final Counter rateLimited;
+    private final Timer parseTime;
+    private final Meter parsedEvents;
 
-    public ApiClient(String baseUrl, LogStorageService storage, int maxRetries, long retryDelayMs) throws IOException {
-        this.baseUrl = baseUrl;
+    /**
+     * A client for {@code config.api.baseUrl} with every setting taken from {@code config}.
+     *
+     * @param rateLimiter limiter shared with other clients drawing on the same quota,
+     *                    or {@code null} for one of this client's own
+     * @param metrics     registry for request latency, response bytes, rate-limit waits,
+     *                    parse time and parsed events; also handed to the retry handler
+     */
+    public ApiClient(AppConfig config, LogStorageService storage, RateLimiter rateLimiter, MetricRegistry metrics)
+            throws IOException {
+        this.baseUrl = config.api.baseUrl;
         this.storage = storage;
-        this.mapper = new ObjectMapper();
-        this.config = ConfigLoader.loadConfig("src/config.yaml");
-        this.config.api.maxRetries = maxRetries;
-        this.config.api.retryDelayMs = retryDelayMs;
-        this.retryHandler = new RetryHandler(maxRetries, retryDelayMs);
+        this.pageParser = new EventPageParser(new JsonFactory());
+        this.config = config;
+        this.metrics = metrics;
+        this.requestTime = metrics.timer(MetricRegistry.name(ApiClient.class, "requests"));
+        this.responseBytes = metrics.histogram(MetricRegistry.name(ApiClient.class, "response-bytes"));
+        this.rateLimitWait = metrics.timer(MetricRegistry.name(ApiClient.class, "rate-limit-wait"));
+        this.rateLimited = metrics.counter(MetricRegistry.name(ApiClient.class, "rate-limited"));
+        this.parseTime = metrics.timer(MetricRegistry.name(ApiClient.class, "parse"));
+        this.parsedEvents = metrics.meter(MetricRegistry.name(ApiClient.class, "events"));
+        this.retryHandler = createRetryHandler(config.api, metrics);
+        this.rateLimiter = rateLimiter != null ? rateLimiter
+                : new RateLimiter(config.api.rateLimitReserve, config.api.rateLimitWaitSeconds);
+        this.connectionManager = createConnectionManager(config.api);
+        this.httpClient = createHttpClient(config.api, connectionManager);
+    }
+
+    private static RetryHandler createRetryHandler(AppConfig.ApiConfig api, MetricRegistry metrics) throws IOException {
+        RetryHandler.Jitter jitter;
+        try {
+            jitter = RetryHandler.Jitter.valueOf(api.retryJitter.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown api.retryJitter '" + api.retryJitter + "' (expected none, full or decorrelated)");
+        }
+
+        return new RetryHandler(api.maxRetries, api.retryDelayMs, api.retryMaxDelayMs, jitter,
+                RetryHandler::isRetryable,
+                new RetryBudget(api.retryBudgetPerMinute, TimeUnit.MINUTES.toMillis(1)),
+                new CircuitBreaker(api.circuitFailureThreshold, TimeUnit.SECONDS.toMillis(api.circuitOpenSeconds)),
+                RetryHandler.sharedScheduler(), metrics);
+    }
+
+    private static PoolingHttpClientConnectionManager createConnectionManager(AppConfig.ApiConfig api) {
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(api.connectTimeoutMs))
+                .setSocketTimeout(Timeout.ofMilliseconds(api.readTimeoutMs))
+                .build();
+
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(api.maxConnections)
+                .setMaxConnPerRoute(api.maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(connectionConfig)
+                .build();
+    }
+
+    private static CloseableHttpClient createHttpClient(AppConfig.ApiConfig api,
+                                                        PoolingHttpClientConnectionManager connectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(api.connectTimeoutMs))
+                .setResponseTimeout(Timeout.ofMilliseconds(api.readTimeoutMs))
+                // Used when the server does not send a Keep-Alive header of its own
+                .setConnectionKeepAlive(TimeValue.ofSeconds(api.keepAliveSeconds))
+                .build();
+
+        // Content compression is left enabled: the client sends Accept-Encoding
+        // gzip/deflate and transparently decodes the response entity.
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(api.keepAliveSeconds))
+                .build();
+    }
+
+    /**
+     * Snapshot of the shared connection pool (leased, available and pending connections).
+     */
+    public PoolStats getConnectionPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Also shuts down the connection manager owned by the client
+        httpClient.close();
     }
 
     public void fetchAllPages() throws IOException {
-        String nextUrl = baseUrl;
-        int pageCount = 0;
-        int totalRecords = 0;
+        List<String> sources = sources();
+        logger.info("Starting to fetch data from: " + String.join(", ", sources));
 
-        logger.info("Starting to fetch data from: " + baseUrl);
+        IngestionPipeline pipeline = new IngestionPipeline(
+                this::fetchPage,
+                this::parsePage,
+                storage,
+                config.ingest.queueCapacity,
+                config.ingest.writeBatchPages,
+                config.ingest.maxConcurrentSources
+        );
+        IngestionPipeline.Summary summary = pipeline.run(sources, loadState());
 
-        while (nextUrl != null) {
-            pageCount++;
-            logger.info(String.format("Fetching page %d: %s", pageCount, nextUrl));
+        for (IngestionPipeline.SourceSummary source : summary.getSources()) {
+            if (sources.size() > 1 || source.isStoppedAtHighWatermark()) {
+                logger.info(String.format("Source %s: pages: %d, records: %d%s",
+                        source.getUrl(), source.getPages(), source.getEvents(),
+                        source.isStoppedAtHighWatermark() ? ", stopped at events already stored" : ""));
+            }
+        }
+        logger.info(String.format("Fetch completed. Total pages: %d, Total records: %d, Duplicates skipped: %d",
+                summary.getPages(), summary.getRecords(), summary.getDuplicates()));
+        logPoolStats();
+        if (config.metrics.summary) {
+            printMetricsSummary();
+        }
+    }
 
+    private FetchState loadState() {
+        return config.ingest.stateFile == null || config.ingest.stateFile.isEmpty()
+                ? FetchState.inMemory()
+                : FetchState.load(Paths.get(config.ingest.stateFile));
+    }
+
+    /**
+     * The configured sources resolved against the base URL, so they can be given as paths
+     * such as {@code /repos/owner/name/events}; just the base URL when none are configured.
+     */
+    private List<String> sources() {
+        if (config.api.sources == null || config.api.sources.isEmpty()) {
+            return List.of(baseUrl);
+        }
+        LinkedHashSet<String> sources = new LinkedHashSet<>();
+        URI base = URI.create(baseUrl);
+        for (String source : config.api.sources) {
+            sources.add(base.resolve(source.trim()).toString());
+        }
+        return new ArrayList<>(sources);
+    }
+
+    /**
+     * Prints every metric in the registry to standard error, so a run shows where its time
+     * went: network ({@code requests}, {@code rate-limit-wait}), parsing ({@code parse}) or
+     * storage ({@code LogStorageService.append}). Standard output is left to query results.
+     */
+    private void printMetricsSummary() {
+        try (ConsoleReporter reporter = ConsoleReporter.forRegistry(metrics)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .outputTo(System.err)
+                .build()) {
+            reporter.report();
+        }
+    }
+
+    private void logPoolStats() {
+        PoolStats stats = getConnectionPoolStats();
+        logger.info(String.format("Connection pool: leased=%d, available=%d, pending=%d, max=%d",
+                stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax()));
+    }
+
+    /**
+     * Polls the first page of the feed until the thread is interrupted, storing only
+     * events newer than the newest one seen so far.
+     * <p>
+     * Every poll after the first is a conditional request with {@code If-None-Match},
+     * so an unchanged feed costs a cheap {@code 304} that GitHub does not count against
+     * the rate limit. The wait between polls honours the server's {@code X-Poll-Interval}.
+     * When every event on the first page is new, further pages are walked until an
+     * already-seen event is reached.
+     * <p>
+     * The newest event seen starts at the feed's high-watermark in the fetch state, so the
+     * first poll walks back to where the last fetch or follow stopped; without one it
+     * stores the first page, and only the ids the store does not hold yet. A poll that
+     * still fails after its retries is logged and the next one waits longer, up to
+     * {@value #MAX_FOLLOW_BACKOFF_SECONDS} s. Only an interrupt or a request the server
+     * rejects for good, such as a {@code 4xx}, ends following.
+     *
+     * @throws IOException if the server rejects the poll itself
+     */
+    public void follow() throws IOException {
+        FetchState state = loadState();
+        FetchState.SourceState source = state.source(baseUrl);
+        String etag = null;
+        long newestSeenId = source.highWatermark;
+        int polls = 0;
+        int failures = 0;
+
+        logger.info("Following " + baseUrl);
+
+        while (!Thread.currentThread().isInterrupted()) {
+            polls++;
+            int pollIntervalSeconds = -1;
             try {
-                PageResult result = fetchPage(nextUrl);
-                storage.saveLogs(result.logs);
-                totalRecords += result.logs.size();
-                nextUrl = result.nextUrl;
+                FetchedPage page = fetchPage(baseUrl, etag);
+                pollIntervalSeconds = page.pollIntervalSeconds;
+                if (page.notModified) {
+                    logger.fine(String.format("Poll %d: not modified", polls));
+                } else {
+                    List<LogEntry> fresh = collectNewEvents(page, newestSeenId);
+                    int stored = 0;
+                    if (!fresh.isEmpty()) {
+                        stored = storage.saveLogs(fresh);
+                        newestSeenId = Math.max(newestSeenId, FetchState.newestId(fresh));
+                        recordFollowed(state, source, newestSeenId);
+                    }
+                    // Only once the page is stored, so that a failed poll is repeated in full
+                    etag = page.etag;
+                    logger.info(String.format("Poll %d: stored %d new events", polls, stored));
+                }
+                failures = 0;
+            } catch (InterruptedException | InterruptedIOException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RetryHandler.NonRetryableException e) {
+                throw new IOException("Stopped following " + baseUrl + ": " + e.getMessage(), e);
+            } catch (Exception e) {
+                failures++;
+                logger.warning(String.format("Poll %d of %s failed (%d in a row): %s",
+                        polls, baseUrl, failures, e.getMessage()));
+            }
+
+            long waitSeconds = Math.max(config.api.minPollIntervalSeconds, pollIntervalSeconds);
+            if (failures > 0) {
+                waitSeconds = Math.min(MAX_FOLLOW_BACKOFF_SECONDS,
+                        Math.max(1, waitSeconds) << Math.min(failures - 1, 10));
+            }
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(waitSeconds));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        logger.info(String.format("Stopped following after %d polls", polls));
+    }
+
+    /**
+     * Makes the newest stored event the feed's high-watermark, so that the next fetch or
+     * follow stops there. Left alone while a fetch of the feed is unfinished: its resumed
+     * walk must not stop at events newer than the pages it still has to store.
+     */
+    private static void recordFollowed(FetchState state, FetchState.SourceState source, long newestId)
+            throws IOException {
+        if (source.cursor == null && newestId > source.highWatermark) {
+            source.highWatermark = newestId;
+            state.save();
+        }
+    }
 
-                logger.info(String.format("Page %d completed. Records: %d", pageCount, result.logs.size()));
+    private List<LogEntry> collectNewEvents(FetchedPage firstPage, long newestSeenId) throws IOException {
+        List<LogEntry> fresh = new ArrayList<>();
+        FetchedPage page = firstPage;
 
-                // Optional: Add small delay between requests to be API-friendly
-                if (nextUrl != null) {
-                    Thread.sleep(100); // 100ms delay
+        while (page != null) {
+            List<LogEntry> entries = parsePage(page);
+            for (LogEntry entry : entries) {
+                if (isNewerThan(entry, newestSeenId)) {
+                    fresh.add(entry);
                 }
+            }
 
+            // Nothing to compare against on the first poll, and a page with an
+            // already-seen event means everything after it is old as well.
+            if (newestSeenId < 0 || fresh.size() < entries.size() || page.nextUrl == null) {
+                break;
+            }
+            try {
+                page = fetchPage(page.nextUrl, null);
             } catch (Exception e) {
-                logger.log(Level.SEVERE, "Failed to fetch page after retries: " + nextUrl, e);
-                throw new IOException("API fetch failed", e);
+                throw new IOException("Failed to fetch page after retries: " + page.nextUrl, e);
             }
         }
+        return fresh;
+    }
 
-        logger.info(String.format("Fetch completed. Total pages: %d, Total records: %d", pageCount, totalRecords));
+    private static boolean isNewerThan(LogEntry entry, long newestSeenId) {
+        try {
+            return Long.parseLong(entry.getId()) > newestSeenId;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private FetchedPage fetchPage(String url) throws Exception {
+        return fetchPage(url, null);
     }
 
-    private PageResult fetchPage(String url) throws Exception {
+    private FetchedPage fetchPage(String url, String etag) throws Exception {
         return retryHandler.executeWithRetry(() -> {
-            try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-                HttpGet request = new HttpGet(url);
-                request.setHeader("Accept", "application/vnd.github.v3+json");
-                request.setHeader("User-Agent", "LogParser/1.0"); // GitHub requires User-Agent
+            HttpGet request = new HttpGet(url);
+            request.setHeader("Accept", "application/vnd.github.v3+json");
+            request.setHeader("User-Agent", "LogParser/1.0"); // GitHub requires User-Agent
+            if (etag != null) {
+                request.setHeader("If-None-Match", etag);
+            }
 
-                try (CloseableHttpResponse response = httpClient.execute(request)) {
+            // Waits for as long as the quota requires; only an interrupt ends it early
+            try (Timer.Context ignored = rateLimitWait.time()) {
+                rateLimiter.acquire();
+            }
+            // Time to the last byte of the body, not just to the headers
+            try (Timer.Context ignored = requestTime.time();
+                 CloseableHttpResponse response = httpClient.execute(request)) {
+                try {
                     return handleResponse(response);
-                } catch (InterruptedException e) {
-                    logger.warning("Request failed for URL: " + url + ". Error: " + e.getMessage());
-                    throw new RuntimeException(e);
-                } catch (ProtocolException e) {
-                    logger.warning("Request failed for URL: " + url + ". Error: " + e.getMessage());
-                    throw new RuntimeException(e);
+                } finally {
+                    // Drain the entity so the connection is returned to the pool for reuse
+                    EntityUtils.consume(response.getEntity());
                 }
+            } catch (ProtocolException e) {
+                throw new RetryHandler.NonRetryableException("Malformed response from " + url, e);
             } catch (IOException e) {
                 logger.warning("Request failed for URL: " + url + ". Error: " + e.getMessage());
-                try {
-                    throw e;
-                } catch (IOException ex) {
-                    throw new RuntimeException(ex);
-                }
+                throw e;
             }
         });
     }
 
-    private PageResult handleResponse(CloseableHttpResponse response) throws IOException, InterruptedException, ProtocolException {
+    private FetchedPage handleResponse(CloseableHttpResponse response) throws IOException, ProtocolException {
         int status = response.getCode();
+        long remaining = headerLong(response, "X-RateLimit-Remaining");
+        long retryAfter = parseRetryAfter(headerValue(response, "Retry-After"));
+        rateLimiter.update(headerLong(response, "X-RateLimit-Limit"), remaining,
+                headerLong(response, "X-RateLimit-Reset"), retryAfter);
 
         switch (status) {
             case 200:
-                return processSuccessResponse(response);
+                return readSuccessResponse(response);
+            case 304:
+                return new FetchedPage(new byte[0], null, headerValue(response, "ETag"),
+                        parsePollInterval(response), true);
             case 403:
-                handleRateLimit(response);
-                throw new IOException("Rate limited - will retry");
+            case 429:
+                // The limiter now holds the next attempt back until the budget is back
+                if (status == 429 || remaining == 0 || retryAfter >= 0) {
+                    rateLimited.inc();
+                    throw new IOException("Rate limited - will retry");
+                }
+                throw new RetryHandler.NonRetryableException(String.format("Forbidden (%d)", status), status);
             case 404:
                 logger.warning("Resource not found (404)");
-                return new PageResult(new ArrayList<>(), null);
+                return FetchedPage.notFound();
             default:
                 String errorMsg = String.format("Unexpected status code: %d", status);
                 logger.severe(errorMsg);
-                throw new IOException(errorMsg);
+                // Server errors may clear up; other client errors will not
+                if (status >= 500) {
+                    throw new IOException(errorMsg);
+                }
+                throw new RetryHandler.NonRetryableException(errorMsg, status);
         }
     }
 
-    private PageResult processSuccessResponse(CloseableHttpResponse response) throws IOException, ProtocolException {
-        JsonNode array = mapper.readTree(response.getEntity().getContent());
-        List<LogEntry> logs = new ArrayList<>();
+    private FetchedPage readSuccessResponse(CloseableHttpResponse response) throws IOException, ProtocolException {
+        byte[] body = EntityUtils.toByteArray(response.getEntity());
+        responseBytes.update(body.length);
+        String nextUrl = extractNextUrl(response.getHeader("Link"));
+        return new FetchedPage(body, nextUrl, headerValue(response, "ETag"), parsePollInterval(response), false);
+    }
 
-        // Validate response structure
-        if (!array.isArray()) {
-            throw new IOException("Expected JSON array in response");
-        }
+    private static String headerValue(CloseableHttpResponse response, String name) throws ProtocolException {
+        Header header = response.getHeader(name);
+        return header != null ? header.getValue() : null;
+    }
 
-        for (JsonNode node : array) {
-            try {
-                LogEntry entry = parseLogEntry(node);
-                if (entry != null) {
-                    logs.add(entry);
-                }
-            } catch (Exception e) {
-                logger.warning("Failed to parse log entry: " + e.getMessage());
-                // Continue processing other entries
-            }
+    /**
+     * Numeric header value, or -1 if the header is missing or not a number.
+     */
+    private static long headerLong(CloseableHttpResponse response, String name) throws ProtocolException {
+        String value = headerValue(response, name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warning("Invalid " + name + " header value");
+            return -1;
         }
-
-        String nextUrl = extractNextUrl(response.getHeader("Link"));
-        return new PageResult(logs, nextUrl);
     }
 
-    private LogEntry parseLogEntry(JsonNode node) {
-        // Add null checks and validation
-        if (node == null || node.get("id") == null || node.get("type") == null) {
-            return null;
+    /**
+     * {@code Retry-After} in seconds from now; the header is either a number of seconds or an HTTP date.
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null) {
+            return -1;
         }
-
-        LogEntry.Actor actor = new LogEntry.Actor();
-        JsonNode actorNode = node.get("actor");
-        if (actorNode != null && actorNode.get("login") != null) {
-            actor.login = actorNode.get("login").asText();
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            // Not a number of seconds; try the HTTP-date form
+        }
+        try {
+            long at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            return Math.max(0, at - System.currentTimeMillis() / 1000);
+        } catch (DateTimeParseException e) {
+            logger.warning("Invalid Retry-After header value");
+            return -1;
         }
-
-        return new LogEntry(
-                node.get("id").asText(),
-                node.get("type").asText(),
-                actor
-        );
     }
 
-    private void handleRateLimit(CloseableHttpResponse response) throws InterruptedException, ProtocolException {
-        // Check for X-RateLimit-Reset header
-        Header resetHeader = response.getHeader("X-RateLimit-Reset");
-        long waitTime = config.api.rateLimitWaitSeconds;
-
-        if (resetHeader != null) {
-            try {
-                long resetTime = Long.parseLong(resetHeader.getValue());
-                long currentTime = System.currentTimeMillis() / 1000;
-                long calculatedWait = Math.max(1, resetTime - currentTime + 1);
-                waitTime = Math.min(calculatedWait, config.api.rateLimitWaitSeconds);
-            } catch (NumberFormatException e) {
-                logger.warning("Invalid X-RateLimit-Reset header value");
-            }
+    private static int parsePollInterval(CloseableHttpResponse response) throws ProtocolException {
+        String value = headerValue(response, "X-Poll-Interval");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warning("Invalid X-Poll-Interval header value");
+            return -1;
         }
+    }
 
-        logger.info(String.format("Rate limited. Waiting %d seconds...", waitTime));
-        Thread.sleep(TimeUnit.SECONDS.toMillis(waitTime));
+    private List<LogEntry> parsePage(FetchedPage page) throws IOException {
+        if (page.body.length == 0) {
+            return new ArrayList<>();
+        }
+        List<LogEntry> entries;
+        try (Timer.Context ignored = parseTime.time()) {
+            entries = pageParser.parse(page.body);
+        }
+        parsedEvents.mark(entries.size());
+        return entries;
     }
 
     private String extractNextUrl(Header linkHeader) {
@@ -200,14 +508,4 @@ public class ApiClient {
         }
         return null;
     }
-
-    private static class PageResult {
-        final List<LogEntry> logs;
-        final String nextUrl;
-
-        PageResult(List<LogEntry> logs, String nextUrl) {
-            this.logs = logs;
-            this.nextUrl = nextUrl;
-        }
-    }
 }
\ No newline at end of file
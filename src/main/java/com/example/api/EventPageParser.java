@@ -0,0 +1,133 @@
+package com.example.api;
+
+import com.example.model.LogEntry;
+import com.example.model.LogEntryInterner;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Token-level parser for a page of GitHub events.
+ * <p>
+ * Only {@code id}, {@code type}, {@code actor.login}, {@code repo.name} and
+ * {@code created_at} are read; every other field, including the often large
+ * {@code payload}, is skipped with {@link JsonParser#skipChildren()} without being
+ * materialized. An entry that is not an object, or that lacks a scalar
+ * {@code id} or {@code type}, is skipped and parsing carries on with the next one.
+ * Types, actors and repos are canonicalized through {@link LogEntryInterner}.
+ */
+public class EventPageParser {
+    private static final Logger logger = Logger.getLogger(EventPageParser.class.getName());
+
+    private final JsonFactory factory;
+
+    public EventPageParser(JsonFactory factory) {
+        this.factory = factory;
+    }
+
+    public List<LogEntry> parse(byte[] body) throws IOException {
+        List<LogEntry> logs = new ArrayList<>();
+
+        try (JsonParser parser = factory.createParser(body)) {
+            // Validate response structure
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected JSON array in response");
+            }
+
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new IOException("Unexpected end of response");
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    logger.warning("Failed to parse log entry: expected object but found " + token);
+                    parser.skipChildren();
+                    continue;
+                }
+
+                LogEntry entry = parseLogEntry(parser);
+                if (entry != null) {
+                    logs.add(entry);
+                }
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * Reads one event object; the parser is left on its closing END_OBJECT.
+     */
+    private LogEntry parseLogEntry(JsonParser parser) throws IOException {
+        String id = null;
+        String type = null;
+        String login = null;
+        String repo = null;
+        String createdAt = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            switch (field) {
+                case "id":
+                    id = scalarText(parser, value);
+                    break;
+                case "type":
+                    type = scalarText(parser, value);
+                    break;
+                case "actor":
+                    login = nestedText(parser, value, "login");
+                    break;
+                case "repo":
+                    repo = nestedText(parser, value, "name");
+                    break;
+                case "created_at":
+                    createdAt = scalarText(parser, value);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (id == null || type == null) {
+            return null;
+        }
+        return new LogEntry(id, LogEntryInterner.type(type), LogEntryInterner.actor(login),
+                LogEntryInterner.repo(repo), createdAt);
+    }
+
+    /**
+     * Reads {@code name} out of the object {@code value} starts, skipping everything else;
+     * {@code null} if there is none or the value is not an object.
+     */
+    private static String nestedText(JsonParser parser, JsonToken value, String name) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String text = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken fieldValue = parser.nextToken();
+            if (name.equals(field)) {
+                text = scalarText(parser, fieldValue);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return text;
+    }
+
+    private static String scalarText(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+}
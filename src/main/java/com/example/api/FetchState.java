@@ -0,0 +1,192 @@
+package com.example.api;
+
+import com.example.model.LogEntry;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Where each source's last fetch got to, kept on disk between runs.
+ * <p>
+ * A walk that has not reached its end keeps the URL of the next page as its
+ * {@code cursor}, so a failed run resumes there instead of at the first page. The
+ * newest event id of the last complete walk is the source's {@code highWatermark}; a
+ * new walk stops at the first page that reaches it, since everything after that page
+ * was stored before. The newest id of the walk in progress only becomes the
+ * high-watermark once that walk completes, as the pages between it and the old
+ * high-watermark are not all stored until then.
+ * <p>
+ * The file is replaced atomically, by writing and fsyncing a sibling file, moving it over
+ * the old one and fsyncing the directory, so a crash, even of the machine, leaves either
+ * the previous state or the new one.
+ */
+public class FetchState {
+    private static final Logger logger = Logger.getLogger(FetchState.class.getName());
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Path file;
+    private final Map<String, SourceState> sources;
+
+    private FetchState(Path file, Map<String, SourceState> sources) {
+        this.file = file;
+        this.sources = sources;
+    }
+
+    /**
+     * State that is never saved: every walk starts at the first page and reads to the end.
+     */
+    public static FetchState inMemory() {
+        return new FetchState(null, new LinkedHashMap<>());
+    }
+
+    /**
+     * Reads the state saved in {@code file}, or starts afresh if there is none or it is
+     * unreadable.
+     */
+    public static FetchState load(Path file) {
+        Map<String, SourceState> sources = new LinkedHashMap<>();
+        if (Files.exists(file)) {
+            try {
+                sources.putAll(mapper.readValue(file.toFile(), Saved.class).sources);
+            } catch (IOException e) {
+                logger.warning("Ignoring unreadable fetch state " + file + ": " + e.getMessage());
+            }
+        }
+        return new FetchState(file, sources);
+    }
+
+    /**
+     * The state of {@code source}, created empty on first use.
+     */
+    public synchronized SourceState source(String source) {
+        return sources.computeIfAbsent(source, url -> new SourceState());
+    }
+
+    /**
+     * Whether {@link #save()} writes anything, as opposed to {@link #inMemory()} state.
+     */
+    public boolean isPersistent() {
+        return file != null;
+    }
+
+    /**
+     * Writes the current state; a no-op for {@link #inMemory()} state.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        Saved saved = new Saved();
+        saved.sources = sources;
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path scratch = parent.resolve(file.getFileName() + ".saving");
+        ByteBuffer data = ByteBuffer.wrap(mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(saved));
+        try (FileChannel channel = FileChannel.open(scratch, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            // Otherwise the rename can reach the disk before the contents, leaving an empty file
+            channel.force(true);
+        }
+        try {
+            Files.move(scratch, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(scratch, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        forceDirectory(parent);
+    }
+
+    /**
+     * Makes a rename in {@code directory} durable. Platforms that cannot open a directory,
+     * such as Windows, are left to make it durable on their own.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * The largest numeric id in {@code entries}, or -1 if there is none.
+     */
+    static long newestId(List<LogEntry> entries) {
+        long newest = -1;
+        for (LogEntry entry : entries) {
+            try {
+                newest = Math.max(newest, Long.parseLong(entry.getId()));
+            } catch (NumberFormatException e) {
+                // Non-numeric ids cannot be ordered; they never advance the high-water mark
+            }
+        }
+        return newest;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    /**
+     * Updated by the thread that stores pages and read by the threads that fetch them, so
+     * every field is volatile; {@link #pageStored} writes {@code cursor} last, so a reader
+     * that reads it first sees the watermarks that go with it.
+     */
+    public static class SourceState {
+        // Next page of an unfinished walk; null when the last walk completed
+        public volatile String cursor;
+        // Newest event id of the last complete walk; -1 if none (or ids are not numeric)
+        public volatile long highWatermark = -1;
+        // Newest event id stored by the walk in progress
+        public volatile long pendingWatermark = -1;
+
+        /**
+         * Records a stored page: where the walk goes next, or {@code null} if it is over.
+         */
+        void pageStored(String next, long newestId) {
+            long pending = Math.max(pendingWatermark, newestId);
+            if (next == null) {
+                highWatermark = Math.max(highWatermark, pending);
+                pendingWatermark = -1;
+            } else {
+                pendingWatermark = pending;
+            }
+            cursor = next;
+        }
+
+        /**
+         * Whether {@code id} was stored by an earlier complete walk. Ids that are not
+         * numbers cannot be ordered and never are.
+         */
+        boolean reached(String id) {
+            if (highWatermark < 0 || id == null) {
+                return false;
+            }
+            try {
+                return Long.parseLong(id) <= highWatermark;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class Saved {
+        public Map<String, SourceState> sources = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.api;
+
+/**
+ * Raw body of one fetched page plus the URL of the page after it, if any.
+ * Parsing is left to a later stage so the network stage can move on right away.
+ * <p>
+ * A {@code 304 Not Modified} answer to a conditional request is represented by
+ * {@link #isNotModified()} and carries no body; so does a {@code 404}, which reads as an
+ * empty last page except where {@link #isNotFound()} matters.
+ */
+public class FetchedPage {
+    final byte[] body;
+    final String nextUrl;
+    final String etag;
+    final int pollIntervalSeconds;
+    final boolean notModified;
+    private boolean notFound;
+
+    FetchedPage(byte[] body, String nextUrl) {
+        this(body, nextUrl, null, -1, false);
+    }
+
+    FetchedPage(byte[] body, String nextUrl, String etag, int pollIntervalSeconds, boolean notModified) {
+        this.body = body;
+        this.nextUrl = nextUrl;
+        this.etag = etag;
+        this.pollIntervalSeconds = pollIntervalSeconds;
+        this.notModified = notModified;
+    }
+
+    static FetchedPage notFound() {
+        FetchedPage page = new FetchedPage(new byte[0], null);
+        page.notFound = true;
+        return page;
+    }
+
+    public String getNextUrl() {
+        return nextUrl;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Value of the {@code X-Poll-Interval} header, or -1 when the server did not send one.
+     */
+    public int getPollIntervalSeconds() {
+        return pollIntervalSeconds;
+    }
+
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    public boolean isNotFound() {
+        return notFound;
+    }
+}
@@ -0,0 +1,417 @@
+package com.example.api;
+
+import com.example.model.LogEntry;
+import com.example.service.LogStorageService;
+import com.example.utils.RetryHandler;
+import com.example.utils.ThreadPools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Three-stage fetch -> parse -> store pipeline.
+ * <p>
+ * The network stage walks every source feed concurrently, each following its own
+ * {@code Link} headers, and hands raw page bodies to the parse stage, which hands parsed
+ * entries to a single writer that stores several pages per batch, whichever sources they
+ * came from. Stages are joined by bounded queues, so a slow disk or parser eventually
+ * blocks the network stage instead of letting pages pile up in memory.
+ * <p>
+ * Sources run on virtual threads on Java 21+, otherwise on platform threads; either way
+ * at most {@code maxConcurrentSources} at once (see {@link ThreadPools}).
+ * <p>
+ * Each source's progress is kept in a {@link FetchState}. A state kept in a file is saved
+ * after every stored page, so the writer then stores one page at a time rather than
+ * {@code writeBatchPages}: a walk resumes at the page after the last one stored, unless the
+ * server rejects that cursor, and stops at the first page that
+ * reaches the events stored by the previous complete walk. Pages of a source with such a
+ * high-watermark are parsed by its walker, which needs their ids before it fetches on.
+ */
+public class IngestionPipeline {
+    private static final Logger logger = Logger.getLogger(IngestionPipeline.class.getName());
+
+    @FunctionalInterface
+    public interface PageFetcher {
+        FetchedPage fetch(String url) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface PageParser {
+        List<LogEntry> parse(FetchedPage page) throws IOException;
+    }
+
+    private final PageFetcher fetcher;
+    private final PageParser parser;
+    private final LogStorageService storage;
+    private final int queueCapacity;
+    private final int writeBatchPages;
+    private final int maxConcurrentSources;
+
+    public IngestionPipeline(PageFetcher fetcher, PageParser parser, LogStorageService storage,
+                             int queueCapacity, int writeBatchPages) {
+        this(fetcher, parser, storage, queueCapacity, writeBatchPages, 1);
+    }
+
+    public IngestionPipeline(PageFetcher fetcher, PageParser parser, LogStorageService storage,
+                             int queueCapacity, int writeBatchPages, int maxConcurrentSources) {
+        this.fetcher = fetcher;
+        this.parser = parser;
+        this.storage = storage;
+        this.queueCapacity = queueCapacity;
+        this.writeBatchPages = writeBatchPages;
+        this.maxConcurrentSources = maxConcurrentSources;
+    }
+
+    public Summary run(String startUrl) throws IOException {
+        return run(Collections.singletonList(startUrl), FetchState.inMemory());
+    }
+
+    public Summary run(List<String> sources) throws IOException {
+        return run(sources, FetchState.inMemory());
+    }
+
+    /**
+     * Runs all stages until the last page of every source is stored. A failing source
+     * does not stop the others, and the pages fetched before it are still parsed and
+     * stored; a parse or store failure interrupts the other stages. Either way the first
+     * failure is rethrown, once the run is over.
+     */
+    public Summary run(List<String> sources, FetchState state) throws IOException {
+        BlockingQueue<Page> fetched = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Page> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        Summary summary = new Summary(sources, state);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3, stageThreadFactory());
+        CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+        Future<Void> network = stages.submit(() -> networkStage(sources, fetched, summary));
+        stages.submit(() -> parseStage(fetched, parsed));
+        stages.submit(() -> writeStage(parsed, summary, state));
+
+        IOException failure = null;
+        try {
+            for (int i = 0; i < 3; i++) {
+                Future<Void> stage = stages.take();
+                try {
+                    stage.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException
+                                ? (IOException) e.getCause()
+                                : new IOException("Ingestion pipeline failed", e.getCause());
+                    }
+                    if (stage != network) {
+                        executor.shutdownNow();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ingestion pipeline interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        return summary;
+    }
+
+    /**
+     * Walks all sources at once and ends the stream when the last one is done.
+     */
+    private Void networkStage(List<String> sources, BlockingQueue<Page> out, Summary summary) throws Exception {
+        ExecutorService sourceExecutor = ThreadPools.newIoExecutor("ingest-source", maxConcurrentSources);
+        List<Future<Void>> walks = new ArrayList<>(sources.size());
+        IOException failure = null;
+        try {
+            for (String source : sources) {
+                SourceSummary progress = summary.sources.get(source);
+                walks.add(sourceExecutor.submit(() -> walkSource(source, progress, out)));
+            }
+            for (Future<Void> walk : walks) {
+                try {
+                    walk.get();
+                } catch (ExecutionException e) {
+                    IOException cause = e.getCause() instanceof IOException
+                            ? (IOException) e.getCause()
+                            : new IOException("Source failed", e.getCause());
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                }
+            }
+        } finally {
+            sourceExecutor.shutdownNow();
+        }
+
+        // Let the pages already fetched be stored before failing the run
+        out.put(Page.END);
+        if (failure != null) {
+            throw failure;
+        }
+        return null;
+    }
+
+    /**
+     * Follows one source's pages to the end or to its high-watermark; its pagination
+     * state is its own. Its fetch state is read once, before any of its pages is stored;
+     * the writer thread updates it as the pages are.
+     */
+    private Void walkSource(String source, SourceSummary progress, BlockingQueue<Page> out) throws Exception {
+        FetchState.SourceState state = progress.state;
+        String cursor = state.cursor;
+        boolean resuming = cursor != null;
+        String url = resuming ? cursor : source;
+        long highWatermark = state.highWatermark;
+        int pageNumber = 0;
+        if (resuming) {
+            logger.info("Resuming " + source + " at " + url);
+        }
+
+        while (url != null) {
+            pageNumber++;
+            logger.info(String.format("Fetching page %d: %s", pageNumber, url));
+            FetchedPage page;
+            try {
+                page = fetcher.fetch(url);
+            } catch (Exception e) {
+                if (resuming && pageNumber == 1 && rejectsCursor(e)) {
+                    // A cursor from an earlier run may no longer be served; start over instead
+                    logger.warning("Cannot resume at " + url + " (" + e.getMessage() + "); starting at " + source);
+                    resuming = false;
+                    url = source;
+                    pageNumber = 0;
+                    continue;
+                }
+                // Anything else, such as a revoked token, keeps the cursor for the next run
+                progress.failure = e.getMessage();
+                throw new IOException("Failed to fetch page after retries: " + url, e);
+            }
+            if (resuming && pageNumber == 1 && page.isNotFound()) {
+                logger.warning("Cannot resume at " + url + " (not found); starting at " + source);
+                resuming = false;
+                url = source;
+                pageNumber = 0;
+                continue;
+            }
+            progress.pages++;
+
+            String next = page.nextUrl;
+            List<LogEntry> entries = null;
+            if (highWatermark >= 0) {
+                entries = parser.parse(page);
+                progress.events += entries.size();
+                if (reachesHighWatermark(state, entries)) {
+                    logger.info(String.format("Page %d of %s reaches events already stored; stopping there",
+                            pageNumber, source));
+                    progress.stoppedAtHighWatermark = true;
+                    next = null;
+                }
+            }
+            out.put(new Page(progress, pageNumber, page, entries, next));
+            url = next;
+        }
+        return null;
+    }
+
+    /**
+     * Whether a failure to fetch a saved cursor means the server no longer serves it, as
+     * opposed to refusing this client or failing on its own.
+     */
+    private static boolean rejectsCursor(Exception e) {
+        if (!(e instanceof RetryHandler.NonRetryableException)) {
+            return false;
+        }
+        int status = ((RetryHandler.NonRetryableException) e).getStatus();
+        return status == 400 || status == 404 || status == 410 || status == 422;
+    }
+
+    private static boolean reachesHighWatermark(FetchState.SourceState state, List<LogEntry> entries) {
+        for (LogEntry entry : entries) {
+            if (state.reached(entry.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Void parseStage(BlockingQueue<Page> in, BlockingQueue<Page> out) throws Exception {
+        Page page;
+        while ((page = in.take()) != Page.END) {
+            List<LogEntry> entries = page.entries;
+            if (entries == null) {
+                entries = parser.parse(page.fetched);
+                page.source.events += entries.size();
+            }
+            out.put(new Page(page.source, page.number, null, entries, page.next));
+        }
+        out.put(Page.END);
+        return null;
+    }
+
+    private Void writeStage(BlockingQueue<Page> in, Summary summary, FetchState state) throws Exception {
+        // A page's progress can only be saved once it is stored, and alone
+        int batchPages = state.isPersistent() ? 1 : writeBatchPages;
+        List<Page> pages = new ArrayList<>(batchPages);
+        boolean done = false;
+
+        while (!done) {
+            pages.clear();
+            pages.add(in.take());
+            in.drainTo(pages, batchPages - 1);
+
+            List<LogEntry> batch = new ArrayList<>();
+            int pageCount = 0;
+            for (Page page : pages) {
+                if (page == Page.END) {
+                    done = true;
+                    break;
+                }
+                batch.addAll(page.entries);
+                pageCount++;
+                logger.info(String.format("Page %d of %s completed. Records: %d",
+                        page.number, page.source.url, page.entries.size()));
+            }
+
+            if (pageCount > 0) {
+                int stored = storage.saveLogs(batch);
+                summary.pages += pageCount;
+                summary.records += stored;
+                summary.duplicates += batch.size() - stored;
+
+                // Only now are these pages safe to skip on the next run
+                for (int i = 0; i < pageCount; i++) {
+                    Page page = pages.get(i);
+                    page.source.state.pageStored(page.next, FetchState.newestId(page.entries));
+                }
+                state.save();
+            }
+        }
+        return null;
+    }
+
+    private static ThreadFactory stageThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "ingest-stage-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class Page {
+        static final Page END = new Page(null, -1, null, null, null);
+
+        final SourceSummary source;
+        final int number;
+        final FetchedPage fetched;
+        final List<LogEntry> entries;
+        // Where the walk continues after this page; null if this page ends it
+        final String next;
+
+        Page(SourceSummary source, int number, FetchedPage fetched, List<LogEntry> entries, String next) {
+            this.source = source;
+            this.number = number;
+            this.fetched = fetched;
+            this.entries = entries;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Totals for a pipeline run, updated by the writer stage, and per-source progress.
+     */
+    public static class Summary {
+        private final Map<String, SourceSummary> sources = new LinkedHashMap<>();
+        private volatile int pages;
+        private volatile int records;
+        private volatile int duplicates;
+
+        Summary(List<String> sourceUrls, FetchState state) {
+            for (String url : sourceUrls) {
+                sources.put(url, new SourceSummary(url, state.source(url)));
+            }
+        }
+
+        /**
+         * Per-source progress, in the order the sources were given.
+         */
+        public List<SourceSummary> getSources() {
+            return new ArrayList<>(sources.values());
+        }
+
+        public int getPages() {
+            return pages;
+        }
+
+        public int getRecords() {
+            return records;
+        }
+
+        public int getDuplicates() {
+            return duplicates;
+        }
+    }
+
+    /**
+     * Pages fetched and events parsed for one source, and why it stopped early if it did.
+     * Pages are counted by the source's own walker, events by the parse stage.
+     */
+    public static class SourceSummary {
+        private final String url;
+        private final FetchState.SourceState state;
+        private volatile int pages;
+        private volatile int events;
+        private volatile boolean stoppedAtHighWatermark;
+        private volatile String failure;
+
+        SourceSummary(String url, FetchState.SourceState state) {
+            this.url = url;
+            this.state = state;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getPages() {
+            return pages;
+        }
+
+        public int getEvents() {
+            return events;
+        }
+
+        /**
+         * Whether the walk ended early, at a page reaching events stored by an earlier run.
+         */
+        public boolean isStoppedAtHighWatermark() {
+            return stoppedAtHighWatermark;
+        }
+
+        /**
+         * Why the source stopped before its last page, or {@code null} if it completed.
+         */
+        public String getFailure() {
+            return failure;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Token bucket sized from the rate-limit headers of the API's own responses.
+ * <p>
+ * After every response {@link #update} is given {@code X-RateLimit-Remaining},
+ * {@code X-RateLimit-Reset} and {@code Retry-After}. The bucket then refills at
+ * {@code remaining / time-to-reset}, which spreads the budget evenly over the window.
+ * It holds everything above a reserve of {@code reserveFraction} of the limit, so
+ * requests run at full speed while the budget is plentiful and are paced only as it
+ * runs low. Pacing never holds a request back longer than {@code maxWaitSeconds}: past
+ * that the request goes out early, drawing on the reserve. An exhausted budget or a
+ * {@code Retry-After} blocks callers until the given time, however long that is, since
+ * the server would refuse anything sent earlier. Until the first headers arrive nothing
+ * is throttled.
+ * <p>
+ * One instance can be shared by any number of clients and threads in the JVM, so that
+ * they draw on a single quota. Callers reserve a token under the lock and sleep outside
+ * it, so concurrent callers are spaced out rather than released at once.
+ */
+public class RateLimiter {
+    private static final Logger logger = Logger.getLogger(RateLimiter.class.getName());
+
+    private final double reserveFraction;
+    private final long maxWaitMs;
+
+    private boolean known;
+    private double tokens;
+    private double capacity;
+    private double tokensPerMs;
+    private long refilledAt;
+    private long resetAt;
+    private long blockedUntil;
+
+    /**
+     * @param reserveFraction share of the limit that is only handed out at the paced rate
+     * @param maxWaitSeconds  longest a single request is held back to pace the budget;
+     *                        waits for an exhausted budget are not capped
+     */
+    public RateLimiter(double reserveFraction, long maxWaitSeconds) {
+        this.reserveFraction = reserveFraction;
+        this.maxWaitMs = TimeUnit.SECONDS.toMillis(maxWaitSeconds);
+    }
+
+    /**
+     * Blocks until the caller may send one request.
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquire() throws IOException {
+        long now = System.currentTimeMillis();
+        long wait = reserve(now);
+        if (wait <= 0) {
+            return;
+        }
+        if (wait > 1000) {
+            logger.info(String.format("Rate limit: waiting %d ms before the next request", wait));
+        }
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+        }
+    }
+
+    /**
+     * Takes one token and returns how long the caller has to wait for it.
+     */
+    synchronized long reserve(long now) {
+        // Until then the server refuses requests, so this part of the wait is never cut short
+        long blockedAt = Math.max(now, blockedUntil);
+        long pacedAt = now;
+        if (known) {
+            refill(now);
+            tokens -= 1;
+            if (tokens < 0) {
+                if (tokensPerMs > 0) {
+                    pacedAt = now + (long) Math.ceil(-tokens / tokensPerMs);
+                } else {
+                    blockedAt = Math.max(blockedAt, resetAt);
+                }
+            }
+        }
+
+        if (pacedAt - now > maxWaitMs) {
+            logger.info(String.format("Rate limit pacing asks for a %d s wait; sending after %d s, from the reserve",
+                    TimeUnit.MILLISECONDS.toSeconds(pacedAt - now), TimeUnit.MILLISECONDS.toSeconds(maxWaitMs)));
+            pacedAt = now + maxWaitMs;
+        }
+        long wait = Math.max(blockedAt, pacedAt) - now;
+        if (blockedAt - now > maxWaitMs) {
+            logger.warning(String.format("Rate limit exhausted; waiting %d s for the window to reset",
+                    TimeUnit.MILLISECONDS.toSeconds(blockedAt - now)));
+        }
+        return wait;
+    }
+
+    /**
+     * Adjusts the bucket to the budget reported with a response. Any argument may be
+     * negative when the header was missing.
+     *
+     * @param limit             {@code X-RateLimit-Limit}, requests per window
+     * @param remaining         {@code X-RateLimit-Remaining}
+     * @param resetEpochSeconds {@code X-RateLimit-Reset}, when the window ends
+     * @param retryAfterSeconds {@code Retry-After}
+     */
+    public void update(long limit, long remaining, long resetEpochSeconds, long retryAfterSeconds) {
+        update(limit, remaining, resetEpochSeconds, retryAfterSeconds, System.currentTimeMillis());
+    }
+
+    synchronized void update(long limit, long remaining, long resetEpochSeconds, long retryAfterSeconds, long now) {
+        if (retryAfterSeconds >= 0) {
+            blockedUntil = Math.max(blockedUntil, now + TimeUnit.SECONDS.toMillis(retryAfterSeconds));
+        }
+        if (remaining < 0 || resetEpochSeconds < 0) {
+            return;
+        }
+
+        long reset = TimeUnit.SECONDS.toMillis(resetEpochSeconds);
+        long window = Math.max(1000, reset - now);
+        long reserve = (long) Math.ceil(Math.max(limit, remaining) * reserveFraction);
+        boolean newWindow = !known || reset > resetAt;
+
+        refill(now);
+        known = true;
+        resetAt = reset;
+        tokensPerMs = (double) remaining / window;
+        capacity = Math.max(1, remaining - reserve);
+        // Replies to requests sent before this one may report a stale, higher count
+        tokens = newWindow ? capacity : Math.min(tokens, Math.min(capacity, remaining));
+        refilledAt = now;
+
+        if (remaining == 0) {
+            blockedUntil = Math.max(blockedUntil, reset);
+            logger.warning(String.format("Rate limit exhausted; requests resume in %d s",
+                    TimeUnit.MILLISECONDS.toSeconds(reset - now)));
+        }
+    }
+
+    private void refill(long now) {
+        if (now > refilledAt) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerMs);
+            refilledAt = now;
+        }
+    }
+}
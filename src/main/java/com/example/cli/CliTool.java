@@ -1,21 +1,30 @@
 package com.example.cli;
 
+import com.codahale.metrics.MetricRegistry;
 import com.example.AppConfig.AppConfig;
 import com.example.AppConfig.ConfigLoader;
 import com.example.api.ApiClient;
+import com.example.api.RateLimiter;
 import com.example.model.LogEntry;
+import com.example.server.QueryServer;
+import com.example.service.EventStats;
+import com.example.service.LogQuery;
 import com.example.service.LogStorageService;
+import com.example.utils.MetricsReporters;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 
 @Command(name = "logparser", mixinStandardHelpOptions = true, version = "1.0",
         description = "Fetch and display logs from a remote API.")
@@ -23,17 +32,23 @@ public class CliTool implements Callable<Integer> {
     // Fixed: Proper logger initialization
     private static final Logger logger = Logger.getLogger(CliTool.class.getName());
 
-    // Load config once and handle potential IOException
+    // Loaded once and handed to everything that needs it
     private final AppConfig config;
-    private final String apiUrl;
     private final String filterType;
 
     @Option(names = {"--fetch"}, description = "Fetch logs from API and save them")
     boolean fetch;
 
+    @Option(names = {"--follow"}, description = "Keep polling the API and save only new events (runs until stopped)")
+    boolean follow;
+
     @Option(names = {"--display"}, description = "Display stored logs")
     boolean display;
 
+    @Option(names = {"--serve"},
+            description = "Serve queries over HTTP from an in-memory cache (runs until stopped; combine with --follow to keep fetching)")
+    boolean serve;
+
     @Option(names = {"--help", "-h"}, usageHelp = true, description = "Display this help message")
     boolean helpRequested;
 
@@ -43,13 +58,46 @@ public class CliTool implements Callable<Integer> {
     @Option(names = {"--actor", "-a"}, description = "Filter by actor login name (partial match)")
     String actorFilter;
 
+    @Option(names = "--repo", description = "Filter by repository name, e.g. owner/name")
+    String repoFilter;
+
+    @Option(names = "--since",
+            description = "Only events created at or after this time: ISO-8601 (2024-05-01T12:00:00Z), a date, or an age such as 1h or 7d")
+    String since;
+
+    @Option(names = "--until", description = "Only events created before this time, in the same forms as --since")
+    String until;
+
     @Option(names = {"--limit", "-l"}, description = "Limit number of results displayed")
     Integer limit;
 
+    @Option(names = {"--output", "-o"},
+            description = "Format of --display: text, or ndjson or csv for export to other tools, in UTF-8 (default: text)")
+    String output = "text";
+
+    @Option(names = {"--count"}, description = "Count stored logs matching the filters")
+    boolean count;
+
+    @Option(names = {"--stats"}, description = "Show event counts by type, top actors and distinct actors")
+    boolean stats;
+
+    @Option(names = {"--top"}, description = "Number of top actors shown by --stats (default: 10)")
+    int top = 10;
+
+    @Option(names = {"--approximate"},
+            description = "Use fixed-memory sketches (HyperLogLog, Space-Saving) for --stats on large histories")
+    boolean approximate;
+
+    @Option(names = {"--parallelism", "-p"},
+            description = "Threads used to scan stored logs (default: number of CPUs, 1 for a sequential scan)")
+    Integer parallelism;
+
     public CliTool() throws IOException {
         try {
             this.config = ConfigLoader.loadConfig("src/config.yaml");
-            this.apiUrl = config.api.baseUrl;
+            if (config.api.baseUrl == null) {
+                config.api.baseUrl = "https://api.github.com/events";
+            }
             this.filterType = config.filter.type;
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Failed to load configuration from src/config.yaml", e);
@@ -57,20 +105,72 @@ public class CliTool implements Callable<Integer> {
         }
     }
 
+    // --since and --until, read once so every operation sees the same window
+    private Instant sinceTime;
+    private Instant untilTime;
+
     @Override
     public Integer call() throws Exception {
         try {
-            LogStorageService storage = new LogStorageService();
+            Instant now = Instant.now();
+            sinceTime = since != null ? LogQuery.parseTime(since, now) : null;
+            untilTime = until != null ? LogQuery.parseTime(until, now) : null;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+        if (!LogRenderer.FORMATS.contains(output)) {
+            System.err.println("Error: Unknown output format '" + output + "'; expected one of "
+                    + String.join(", ", LogRenderer.FORMATS));
+            return 1;
+        }
+
+        MetricsReporters reporters = null;
+        try {
+            // One registry for the whole run, summarized after a fetch. Only fetching and serving
+            // report it over JMX/CSV: a query is over before anyone could attach, and starting
+            // the reporters is a noticeable part of its startup time.
+            MetricRegistry metrics = new MetricRegistry();
+            if (fetch || follow || serve) {
+                reporters = MetricsReporters.start(metrics, config.metrics);
+            }
+            LogStorageService storage = new LogStorageService(config.storage, metrics);
+            if (fetch || follow) {
+                try {
+                    storage.lockForWriting();
+                } catch (IOException e) {
+                    System.err.println("Error: " + e.getMessage());
+                    return 1;
+                }
+            }
+            // One quota for every client in this run; the HTTP clients themselves are only
+            // created by the operations that fetch
+            RateLimiter rateLimiter = fetch || follow
+                    ? new RateLimiter(config.api.rateLimitReserve, config.api.rateLimitWaitSeconds)
+                    : null;
+
+            // Long-running modes compress sealed segments and apply retention as they go
+            if (follow || serve) {
+                storage.startCompaction();
+            }
+
+            // Started first so that events fetched below reach its cache as they are stored
+            QueryServer server = null;
+            if (serve) {
+                logger.info("Starting query server...");
+                try {
+                    server = new QueryServer(config, storage, metrics);
+                    server.start();
+                } catch (Exception e) {
+                    logger.log(Level.SEVERE, "Failed to start the query server", e);
+                    System.err.println("Error: Failed to start the query server. Check logs for details.");
+                    return 1;
+                }
+            }
 
             if (fetch) {
                 logger.info("Starting fetch operation...");
-                try {
-                    ApiClient client = new ApiClient(
-                            apiUrl != null ? apiUrl : "https://api.github.com/events",
-                            storage,
-                            config.api.maxRetries,
-                            config.api.retryDelayMs
-                    );
+                try (ApiClient client = new ApiClient(config, storage, rateLimiter, metrics)) {
                     client.fetchAllPages();
                     logger.info("Fetch operation completed successfully");
                 } catch (Exception e) {
@@ -78,69 +178,140 @@ public class CliTool implements Callable<Integer> {
                     System.err.println("Error: Failed to fetch data from API. Check logs for details.");
                     return 1;
                 }
+
+                // A one-shot fetch has no background compaction; compact once it is done
+                if (!follow && !serve) {
+                    try {
+                        storage.compact();
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "Storage compaction failed; it will be retried on the next run", e);
+                    }
+                }
+            }
+
+            if (follow) {
+                logger.info("Starting follow mode...");
+                try (ApiClient client = new ApiClient(config, storage, rateLimiter, metrics)) {
+                    client.follow();
+                } catch (Exception e) {
+                    logger.log(Level.SEVERE, "Failed while following the API", e);
+                    System.err.println("Error: Failed while following the API. Check logs for details.");
+                    return 1;
+                }
             }
 
             if (display) {
                 logger.info("Starting display operation...");
+                boolean text = output.equals("text");
+                LogRenderer renderer = null;
                 try {
-                    List<LogEntry> logs = storage.loadLogs();
-
-                    if (logs.isEmpty()) {
-                        System.out.println("No logs found. Use --fetch to retrieve data first.");
+                    if (storage.isEmpty()) {
+                        // Exports keep standard output for entries only
+                        (text ? System.out : System.err).println("No logs found. Use --fetch to retrieve data first.");
                         return 0;
                     }
 
-                    logger.info(String.format("Loaded %d total log entries", logs.size()));
-
-                    // Apply type filter if provided
+                    // Type, actor, repo and time filters are answered from the storage indexes;
+                    // entries are written in stored order as they are read, and reading stops at
+                    // the limit or as soon as nobody reads the output any more
                     String effectiveTypeFilter = typeFilter != null ? typeFilter : filterType;
-                    if (effectiveTypeFilter != null && !effectiveTypeFilter.isEmpty()) {
-                        logs = logs.stream()
-                                .filter(log -> log.getType().equalsIgnoreCase(effectiveTypeFilter))
-                                .collect(Collectors.toList());
+                    boolean hasLimit = limit != null && limit > 0;
+                    int[] displayed = {0};
+                    boolean[] isLimited = {false};
+
+                    System.out.flush();
+                    LogRenderer logRenderer = LogRenderer.create(output, new FileOutputStream(FileDescriptor.out));
+                    renderer = logRenderer;
+                    int shown;
+                    try {
+                        shown = storage.queryLogs(query(effectiveTypeFilter), effectiveParallelism(), logs -> {
+                            // One entry past the limit tells whether anything was left out
+                            (hasLimit ? logs.limit(limit + 1L) : logs).forEachOrdered(log -> {
+                                if (hasLimit && displayed[0] == limit) {
+                                    isLimited[0] = true;
+                                    return;
+                                }
+                                try {
+                                    logRenderer.render(log);
+                                } catch (IOException e) {
+                                    // Ends the query, parallel or not
+                                    throw new UncheckedIOException(e);
+                                }
+                                displayed[0]++;
+                            });
+                            return displayed[0];
+                        });
+                    } catch (Exception e) {
+                        // The entries rendered before the query failed still reach the reader
+                        try {
+                            logRenderer.close();
+                        } catch (IOException closeFailure) {
+                            e.addSuppressed(closeFailure);
+                        }
+                        throw e;
                     }
+                    renderer.close();
 
-                    // Apply actor filter if provided
-                    if (actorFilter != null && !actorFilter.isEmpty()) {
-                        logs = logs.stream()
-                                .filter(log -> log.getActor() != null &&
-                                        log.getActor().getLogin() != null &&
-                                        log.getActor().getLogin().toLowerCase()
-                                                .contains(actorFilter.toLowerCase()))
-                                .collect(Collectors.toList());
-                    }
-
-                    if (logs.isEmpty()) {
+                    if (shown == 0) {
                         String filterDesc = buildFilterDescription(effectiveTypeFilter, actorFilter);
                         logger.info("No logs found matching filter" +
                                 (filterDesc.isEmpty() ? "s." : "s: " + filterDesc));
                         return 0;
                     }
 
-                    // Apply limit if specified
-                    boolean isLimited = false;
-                    if (limit != null && limit > 0 && logs.size() > limit) {
-                        logs = logs.stream().limit(limit).collect(Collectors.toList());
-                        isLimited = true;
+                    if (text) {
+                        System.out.println(String.format("Displayed %d log entries", shown));
+                        if (isLimited[0]) {
+                            System.out.println("(Limited to " + limit + " entries)");
+                        }
                     }
 
-                    // Display results
-                    System.out.println(String.format("Displaying %d log entries:", logs.size()));
-                    if (isLimited) {
-                        System.out.println("(Limited to " + limit + " entries)");
+                    logger.info(String.format("Successfully displayed %d log entries", shown));
+                } catch (Exception e) {
+                    if (renderer != null && renderer.isOutputClosed()) {
+                        // The reader went away, as with | head; what it read was complete
+                        logger.fine("Output closed, stopped displaying logs: " + e.getMessage());
+                        return 0;
                     }
-                    System.out.println("=" + "=".repeat(50));
+                    logger.log(Level.SEVERE, "Failed to display logs", e);
+                    System.err.println("Error: Failed to load or display logs. Check logs for details.");
+                    return 1;
+                }
+            }
 
-                    logs.forEach(log -> System.out.println(log.toString()));
+            if (count) {
+                logger.info("Starting count operation...");
+                try {
+                    String effectiveTypeFilter = typeFilter != null ? typeFilter : filterType;
+                    long matching = storage.countLogs(query(effectiveTypeFilter), effectiveParallelism());
+                    String filterDesc = buildFilterDescription(effectiveTypeFilter, actorFilter);
+                    System.out.println(String.format("%d log entries", matching) +
+                            (filterDesc.isEmpty() ? "" : " matching " + filterDesc));
+                } catch (Exception e) {
+                    logger.log(Level.SEVERE, "Failed to count logs", e);
+                    System.err.println("Error: Failed to count logs. Check logs for details.");
+                    return 1;
+                }
+            }
 
-                    logger.info(String.format("Successfully displayed %d log entries", logs.size()));
+            if (stats) {
+                logger.info("Starting stats operation...");
+                try {
+                    String effectiveTypeFilter = typeFilter != null ? typeFilter : filterType;
+                    EventStats result = storage.statsFor(query(effectiveTypeFilter),
+                            Math.max(top, 0), approximate, effectiveParallelism());
+                    printStats(result, buildFilterDescription(effectiveTypeFilter, actorFilter));
                 } catch (Exception e) {
-                    logger.log(Level.SEVERE, "Failed to display logs", e);
-                    System.err.println("Error: Failed to load or display logs. Check logs for details.");
+                    logger.log(Level.SEVERE, "Failed to compute stats", e);
+                    System.err.println("Error: Failed to compute stats. Check logs for details.");
                     return 1;
                 }
             }
 
+            if (server != null) {
+                server.join();
+            }
+
             // Help is handled automatically by picocli, but we keep this for explicit handling
             if (helpRequested) {
                 CommandLine.usage(this, System.out);
@@ -148,7 +319,7 @@ public class CliTool implements Callable<Integer> {
             }
 
             // If no options provided, show usage
-            if (!fetch && !display && !helpRequested) {
+            if (!fetch && !follow && !display && !count && !stats && !serve && !helpRequested) {
                 System.out.println("No operation specified. Use --help for usage information.");
                 CommandLine.usage(this, System.out);
                 return 0;
@@ -160,9 +331,54 @@ public class CliTool implements Callable<Integer> {
             logger.log(Level.SEVERE, "Unexpected error in CLI tool", e);
             System.err.println("Error: An unexpected error occurred. Check logs for details.");
             return 1;
+        } finally {
+            if (reporters != null) {
+                reporters.close();
+            }
+        }
+    }
+
+    private void printStats(EventStats result, String filterDesc) {
+        System.out.println(String.format("%d log entries", result.getEvents()) +
+                (filterDesc.isEmpty() ? "" : " matching " + filterDesc));
+        if (result.getEvents() == 0) {
+            return;
+        }
+
+        System.out.println("=" + "=".repeat(50));
+        System.out.println("Events by type:");
+        for (EventStats.Count type : result.countsByType()) {
+            System.out.println(String.format("  %-30s %10d  %5.1f%%", type.getValue(), type.getCount(),
+                    100.0 * type.getCount() / result.getEvents()));
+        }
+
+        System.out.println();
+        if (result.isApproximate()) {
+            System.out.println(String.format("Distinct actors: ~%d (+/- %.1f%%)",
+                    result.distinctActors(), 100 * result.distinctActorsError()));
+        } else {
+            System.out.println(String.format("Distinct actors: %d", result.distinctActors()));
+        }
+
+        List<EventStats.Count> actors = result.topActors();
+        if (actors.isEmpty()) {
+            return;
+        }
+        System.out.println(String.format("Top %d actors:", actors.size()));
+        for (EventStats.Count actor : actors) {
+            String line = String.format("  %-30s %10d", actor.getValue(), actor.getCount());
+            System.out.println(actor.getError() > 0 ? line + String.format("  (may include %d from others)", actor.getError()) : line);
         }
     }
 
+    private int effectiveParallelism() {
+        return parallelism != null && parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    private LogQuery query(String typeFilter) {
+        return new LogQuery(typeFilter, actorFilter, repoFilter, sinceTime, untilTime);
+    }
+
     private String buildFilterDescription(String typeFilter, String actorFilter) {
         List<String> filters = new ArrayList<>();
 
@@ -174,6 +390,18 @@ public class CliTool implements Callable<Integer> {
             filters.add("actor contains '" + actorFilter + "'");
         }
 
+        if (repoFilter != null && !repoFilter.isEmpty()) {
+            filters.add("repo='" + repoFilter + "'");
+        }
+
+        if (sinceTime != null) {
+            filters.add("created since " + sinceTime);
+        }
+
+        if (untilTime != null) {
+            filters.add("created before " + untilTime);
+        }
+
         return String.join(", ", filters);
     }
 
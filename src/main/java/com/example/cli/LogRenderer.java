@@ -0,0 +1,276 @@
+package com.example.cli;
+
+import com.example.model.LogEntry;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes log entries to a stream in one of the {@code --output} formats, field by field
+ * into a large buffer, without building a string per entry and without flushing per line.
+ * <p>
+ * Once a write fails, usually because the reader went away as with {@code | head},
+ * {@link #isOutputClosed()} is true and the caller should stop producing entries.
+ * {@link #close()} flushes what is left but never closes the stream itself, which is
+ * normally standard output.
+ * <p>
+ * The text format is encoded as {@link System#out} would encode it, so the console shows
+ * it as before; the ndjson and csv exports are always UTF-8, as JSON requires and as
+ * other tools expect, whatever the platform's default charset.
+ */
+public abstract class LogRenderer implements Closeable {
+    public static final List<String> FORMATS = Arrays.asList("text", "ndjson", "csv");
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    protected final OutputStream out;
+    private boolean outputClosed;
+
+    protected LogRenderer(OutputStream out) {
+        this.out = new BufferedOutputStream(out, BUFFER_BYTES);
+    }
+
+    /**
+     * A renderer for {@code format}, one of {@link #FORMATS}.
+     *
+     * @throws IllegalArgumentException for an unknown format
+     */
+    public static LogRenderer create(String format, OutputStream out) throws IOException {
+        switch (format) {
+            case "text":
+                return new Text(out);
+            case "ndjson":
+                return new Ndjson(out);
+            case "csv":
+                return new Csv(out);
+            default:
+                throw new IllegalArgumentException("Unknown output format '" + format + "'; expected one of "
+                        + String.join(", ", FORMATS));
+        }
+    }
+
+    public final void render(LogEntry entry) throws IOException {
+        try {
+            write(entry);
+        } catch (IOException e) {
+            outputClosed = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Whether a write has failed; nothing more will reach the reader.
+     */
+    public boolean isOutputClosed() {
+        return outputClosed;
+    }
+
+    @Override
+    public final void close() throws IOException {
+        if (outputClosed) {
+            return;
+        }
+        try {
+            finish();
+        } catch (IOException e) {
+            outputClosed = true;
+            throw e;
+        }
+    }
+
+    protected abstract void write(LogEntry entry) throws IOException;
+
+    /**
+     * Writes any trailer and flushes everything to the stream.
+     */
+    protected abstract void finish() throws IOException;
+
+    /**
+     * The charset {@link System#out} encodes with: the console's, where the JVM reports
+     * one, otherwise the platform default.
+     */
+    static Charset consoleCharset() {
+        String name = System.getProperty("stdout.encoding", System.getProperty("sun.stdout.encoding"));
+        if (name != null) {
+            try {
+                return Charset.forName(name);
+            } catch (IllegalArgumentException e) {
+                // An encoding this JVM cannot write; System.out falls back the same way
+            }
+        }
+        return Charset.defaultCharset();
+    }
+
+    /**
+     * The console format: entries as {@link LogEntry#toString()} shows them, between two
+     * rules, in the {@link #consoleCharset()}.
+     */
+    public static class Text extends LogRenderer {
+        private static final String RULE = "=" + "=".repeat(50) + "\n";
+
+        private final Writer writer;
+        private boolean started;
+
+        public Text(OutputStream out) {
+            super(out);
+            // The byte buffer below does the batching; this one only has to feed the encoder
+            this.writer = new BufferedWriter(new OutputStreamWriter(this.out, consoleCharset()), 8192);
+        }
+
+        @Override
+        protected void write(LogEntry entry) throws IOException {
+            if (!started) {
+                writer.write(RULE);
+                started = true;
+            }
+            writer.write("LogEntry{id='");
+            writeValue(entry.id);
+            writer.write("', type='");
+            writeValue(entry.type);
+            writer.write("', actor=");
+            writeValue(entry.actor != null ? entry.actor.login : null);
+            if (entry.repo != null) {
+                writer.write(", repo=");
+                writeValue(entry.repo.name);
+            }
+            if (entry.createdAt != null) {
+                writer.write(", createdAt=");
+                writer.write(entry.createdAt);
+            }
+            writer.write("}\n");
+        }
+
+        private void writeValue(String value) throws IOException {
+            writer.write(value != null ? value : "null");
+        }
+
+        @Override
+        protected void finish() throws IOException {
+            if (started) {
+                writer.write(RULE);
+            }
+            writer.flush();
+        }
+    }
+
+    /**
+     * One JSON object per line, in the layout entries are stored in, written with
+     * Jackson's streaming generator.
+     */
+    public static class Ndjson extends LogRenderer {
+        private final JsonGenerator generator;
+
+        public Ndjson(OutputStream out) throws IOException {
+            super(out);
+            this.generator = new JsonFactory()
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .createGenerator(this.out, JsonEncoding.UTF8);
+            // Lines are ended below; no separator between root values
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        protected void write(LogEntry entry) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("id", entry.id);
+            generator.writeStringField("type", entry.type);
+            if (entry.actor != null) {
+                generator.writeObjectFieldStart("actor");
+                generator.writeStringField("login", entry.actor.login);
+                generator.writeEndObject();
+            } else {
+                generator.writeNullField("actor");
+            }
+            if (entry.repo != null) {
+                generator.writeObjectFieldStart("repo");
+                generator.writeStringField("name", entry.repo.name);
+                generator.writeEndObject();
+            }
+            if (entry.createdAt != null) {
+                generator.writeStringField("created_at", entry.createdAt);
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        protected void finish() throws IOException {
+            generator.flush();
+        }
+    }
+
+    /**
+     * RFC 4180 CSV with a header row, one line per entry; absent values are empty.
+     */
+    public static class Csv extends LogRenderer {
+        private final Writer writer;
+
+        public Csv(OutputStream out) throws IOException {
+            super(out);
+            this.writer = new BufferedWriter(new OutputStreamWriter(this.out, StandardCharsets.UTF_8), 8192);
+            writer.write("id,type,actor,repo,created_at\n");
+        }
+
+        @Override
+        protected void write(LogEntry entry) throws IOException {
+            writeField(entry.id);
+            writer.write(',');
+            writeField(entry.type);
+            writer.write(',');
+            writeField(entry.actor != null ? entry.actor.login : null);
+            writer.write(',');
+            writeField(entry.repo != null ? entry.repo.name : null);
+            writer.write(',');
+            writeField(entry.createdAt);
+            writer.write('\n');
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (!needsQuotes(value)) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            int from = 0;
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) == '"') {
+                    writer.write(value, from, i + 1 - from);
+                    writer.write('"');
+                    from = i + 1;
+                }
+            }
+            writer.write(value, from, value.length() - from);
+            writer.write('"');
+        }
+
+        private static boolean needsQuotes(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        protected void finish() throws IOException {
+            writer.flush();
+        }
+    }
+}
@@ -1,20 +1,37 @@
 package com.example.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class LogEntry {
     public String id;
+    @JsonDeserialize(using = LogEntryInterner.TypeDeserializer.class)
     public String type;
     public Actor actor;
+    // Left out of stored records when absent, as in those stored before they were captured
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Repo repo;
+    // ISO-8601 instant, as sent by the API
+    @JsonProperty("created_at")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String createdAt;
 
     public LogEntry() {
         // Default constructor for deserialization
     }
     public LogEntry(String id, String type, Actor actor) {
+        this(id, type, actor, null, null);
+    }
+
+    public LogEntry(String id, String type, Actor actor, Repo repo, String createdAt) {
         this.id = id;
         this.type = type;
         this.actor = actor;
+        this.repo = repo;
+        this.createdAt = createdAt;
     }
 
     public String getId() {
@@ -29,6 +46,14 @@ public class LogEntry {
         return actor;
     }
 
+    public Repo getRepo() {
+        return repo;
+    }
+
+    public String getCreatedAt() {
+        return createdAt;
+    }
+
     public void setId(String id) {
         this.id = id;
     }
@@ -41,11 +66,22 @@ public class LogEntry {
         this.actor = actor;
     }
 
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class Actor {
-        public String login;
+    public void setRepo(Repo repo) {
+        this.repo = repo;
+    }
+
+    public void setCreatedAt(String createdAt) {
+        this.createdAt = createdAt;
+    }
 
-        public Actor() {}
+    /**
+     * Deserialized actors are shared between entries through {@link LogEntryInterner},
+     * so they cannot be changed once built.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonDeserialize(using = LogEntryInterner.ActorDeserializer.class)
+    public static final class Actor {
+        public final String login;
 
         public Actor(String login) {
             this.login = login;
@@ -55,13 +91,32 @@ public class LogEntry {
             return login;
         }
 
-        public void setLogin(String login) {
-            this.login = login;
+        @Override
+        public String toString() {
+            return login;
+        }
+    }
+
+    /**
+     * Deserialized repos are shared between entries through {@link LogEntryInterner},
+     * so they cannot be changed once built.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonDeserialize(using = LogEntryInterner.RepoDeserializer.class)
+    public static final class Repo {
+        public final String name;
+
+        public Repo(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
         }
 
         @Override
         public String toString() {
-            return login;
+            return name;
         }
     }
 
@@ -71,6 +126,8 @@ public class LogEntry {
                 "id='" + id + '\'' +
                 ", type='" + type + '\'' +
                 ", actor=" + actor +
+                (repo != null ? ", repo=" + repo : "") +
+                (createdAt != null ? ", createdAt=" + createdAt : "") +
                 '}';
     }
 }
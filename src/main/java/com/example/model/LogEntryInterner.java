@@ -0,0 +1,157 @@
+package com.example.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical instances for the parts of {@link LogEntry} that repeat across events: the
+ * event type (a few dozen distinct values), the actor and the repo (heavy-tailed sets of
+ * logins and names). Every parse and load path goes through here, so a large history in
+ * memory holds one {@code String} per type and one {@link LogEntry.Actor} per login
+ * instead of one per event.
+ * <p>
+ * All pools are bounded. Types past {@value #MAX_TYPES} are returned as they are; the
+ * actor and repo pools are cleared when they reach {@value #MAX_ACTORS} entries, after
+ * which the ones still in use are pooled again. Actors and repos are immutable, so sharing them is safe.
+ */
+public final class LogEntryInterner {
+    private static final int MAX_TYPES = 1_024;
+    private static final int MAX_ACTORS = 1 << 20;
+
+    private static final LogEntry.Actor NO_LOGIN = new LogEntry.Actor(null);
+    private static final ConcurrentHashMap<String, String> types = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LogEntry.Actor> actors = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LogEntry.Repo> repos = new ConcurrentHashMap<>();
+
+    private LogEntryInterner() {
+    }
+
+    public static String type(String type) {
+        if (type == null) {
+            return null;
+        }
+        String canonical = types.get(type);
+        if (canonical != null) {
+            return canonical;
+        }
+        if (types.size() >= MAX_TYPES) {
+            return type;
+        }
+        canonical = types.putIfAbsent(type, type);
+        return canonical != null ? canonical : type;
+    }
+
+    /**
+     * The shared actor for {@code login}; a {@code null} login maps to one shared actor without a login.
+     */
+    public static LogEntry.Actor actor(String login) {
+        if (login == null) {
+            return NO_LOGIN;
+        }
+        LogEntry.Actor actor = actors.get(login);
+        if (actor != null) {
+            return actor;
+        }
+        if (actors.size() >= MAX_ACTORS) {
+            actors.clear();
+        }
+        actor = new LogEntry.Actor(login);
+        LogEntry.Actor existing = actors.putIfAbsent(login, actor);
+        return existing != null ? existing : actor;
+    }
+
+    /**
+     * The shared repo named {@code name}; {@code null} for no name.
+     */
+    public static LogEntry.Repo repo(String name) {
+        if (name == null) {
+            return null;
+        }
+        LogEntry.Repo repo = repos.get(name);
+        if (repo != null) {
+            return repo;
+        }
+        if (repos.size() >= MAX_ACTORS) {
+            repos.clear();
+        }
+        repo = new LogEntry.Repo(name);
+        LogEntry.Repo existing = repos.putIfAbsent(name, repo);
+        return existing != null ? existing : repo;
+    }
+
+    /**
+     * Jackson hook for {@link LogEntry#type}.
+     */
+    public static class TypeDeserializer extends StdDeserializer<String> {
+        public TypeDeserializer() {
+            super(String.class);
+        }
+
+        @Override
+        public String deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return type(StringDeserializer.instance.deserialize(parser, context));
+        }
+    }
+
+    /**
+     * Jackson hook for {@link LogEntry.Actor}: reads {@code login}, skips any other field.
+     */
+    public static class ActorDeserializer extends StdDeserializer<LogEntry.Actor> {
+        public ActorDeserializer() {
+            super(LogEntry.Actor.class);
+        }
+
+        @Override
+        public LogEntry.Actor deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                return (LogEntry.Actor) context.handleUnexpectedToken(LogEntry.Actor.class, parser);
+            }
+
+            String login = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("login".equals(field) && value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                    login = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return actor(login);
+        }
+    }
+
+    /**
+     * Jackson hook for {@link LogEntry.Repo}: reads {@code name}, skips any other field.
+     */
+    public static class RepoDeserializer extends StdDeserializer<LogEntry.Repo> {
+        public RepoDeserializer() {
+            super(LogEntry.Repo.class);
+        }
+
+        @Override
+        public LogEntry.Repo deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                return (LogEntry.Repo) context.handleUnexpectedToken(LogEntry.Repo.class, parser);
+            }
+
+            String name = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("name".equals(field) && value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                    name = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return repo(name);
+        }
+    }
+}
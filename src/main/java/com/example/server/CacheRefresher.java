@@ -0,0 +1,81 @@
+package com.example.server;
+
+import com.example.model.LogEntry;
+import com.example.service.EventCache;
+import com.example.service.LogStorageService;
+import io.dropwizard.lifecycle.Managed;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the {@link EventCache} in step with the store.
+ * <p>
+ * Entries stored by this process are added as they are written ({@link #onAppend}).
+ * Every {@code reloadSeconds} the store is refreshed ({@link LogStorageService#refresh()});
+ * if other processes, such as a separate {@code --fetch}, appended entries, or retention
+ * dropped some, the cache is rebuilt from the store in the background while queries keep
+ * being answered from the old contents. Compaction alone does not cause a rebuild.
+ */
+class CacheRefresher implements Managed {
+    private static final Logger logger = Logger.getLogger(CacheRefresher.class.getName());
+
+    private final EventCache cache;
+    private final LogStorageService storage;
+    private final int reloadSeconds;
+
+    private ScheduledExecutorService scheduler;
+
+    CacheRefresher(EventCache cache, LogStorageService storage, int reloadSeconds) {
+        this.cache = cache;
+        this.storage = storage;
+        this.reloadSeconds = reloadSeconds;
+    }
+
+    /**
+     * Our own writes go through {@code storage}, so they never make {@link LogStorageService#refresh()}
+     * report a change; they are added here instead.
+     */
+    void onAppend(List<LogEntry> stored) {
+        cache.add(stored);
+    }
+
+    @Override
+    public void start() {
+        if (reloadSeconds <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reloadIfChanged, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void reloadIfChanged() {
+        try {
+            if (!storage.refresh()) {
+                return;
+            }
+            long started = System.nanoTime();
+            cache.reload(storage);
+            logger.info(String.format("Reloaded %d events into the query cache in %d ms",
+                    cache.view().size(), (System.nanoTime() - started) / 1_000_000));
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to reload the query cache; will retry", e);
+        }
+    }
+}
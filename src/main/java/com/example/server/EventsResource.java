@@ -0,0 +1,218 @@
+package com.example.server;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.annotation.Timed;
+import com.example.AppConfig.AppConfig;
+import com.example.model.LogEntry;
+import com.example.service.EventCache;
+import com.example.service.LogQuery;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.ClientErrorException;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code --display} and {@code --count} queries over HTTP.
+ * <p>
+ * {@code GET /events?type=&actor=&repo=&since=&until=&limit=&cursor=} returns a page of
+ * entries in stored order; {@code since} and {@code until} take the same forms as the
+ * command-line options. When more remain, the response carries {@code next}, the cursor
+ * of the following page, and a {@code Link: <...>; rel="next"} header like the GitHub
+ * API's own. Cursors are opaque and point at the first entry of the next page, so pages
+ * stay stable while new events are appended and across cache reloads; once that entry has
+ * been dropped, the cursor is answered with {@code 410 Gone}.
+ * <p>
+ * Responses are tagged with the cache version and the time window the request resolved
+ * to: a repeated request with {@code If-None-Match} gets a {@code 304} until the cache
+ * changes, or, with an age such as {@code since=1h}, until the window moves. Recently
+ * rendered pages are served from memory.
+ */
+@Path("/events")
+@Produces(MediaType.APPLICATION_JSON)
+public class EventsResource {
+    private final EventCache cache;
+    private final AppConfig.ServerConfig config;
+    private final Map<String, Object> responses;
+    private final Meter responseCacheHits;
+    private final Meter responseCacheMisses;
+
+    public EventsResource(EventCache cache, AppConfig.ServerConfig config, MetricRegistry metrics) {
+        this.cache = cache;
+        this.config = config;
+        int capacity = Math.max(0, config.responseCacheEntries);
+        this.responses = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.responseCacheHits = metrics.meter(MetricRegistry.name(EventsResource.class, "response-cache-hits"));
+        this.responseCacheMisses = metrics.meter(MetricRegistry.name(EventsResource.class, "response-cache-misses"));
+    }
+
+    @GET
+    @Timed
+    public Response find(@QueryParam("type") String type, @QueryParam("actor") String actor,
+                         @QueryParam("repo") String repo, @QueryParam("since") String since,
+                         @QueryParam("until") String until, @QueryParam("limit") Integer limit, @QueryParam("cursor") String cursor,
+                         @Context Request request, @Context UriInfo uriInfo) {
+        int pageSize = limit != null ? limit : config.defaultPageSize;
+        if (pageSize <= 0 || pageSize > config.maxPageSize) {
+            throw new BadRequestException("limit must be between 1 and " + config.maxPageSize);
+        }
+        LogQuery query = query(type, actor, repo, since, until);
+
+        EventCache.View view = cache.view();
+        EntityTag tag = tag(view, query);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.cacheControl(cacheControl()).build();
+        }
+
+        String key = String.format("find|%s|%d|%s|%d", key(query), pageSize, cursor, view.version());
+        EventPage page = (EventPage) cached(key);
+        if (page == null) {
+            EventCache.Page found;
+            try {
+                found = view.find(query, cursor, pageSize);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException(e.getMessage());
+            } catch (EventCache.CursorExpiredException e) {
+                throw new ClientErrorException(e.getMessage() + "; start again without a cursor", Response.Status.GONE);
+            }
+            page = new EventPage(found.getEntries(), found.getNext());
+            remember(key, page);
+        }
+
+        Response.ResponseBuilder response = Response.ok(page).tag(tag).cacheControl(cacheControl());
+        if (page.getNext() != null) {
+            response.link(uriInfo.getRequestUriBuilder().replaceQueryParam("cursor", page.getNext()).build(), "next");
+        }
+        return response.build();
+    }
+
+    @GET
+    @Path("/count")
+    @Timed
+    public Response count(@QueryParam("type") String type, @QueryParam("actor") String actor,
+                          @QueryParam("repo") String repo, @QueryParam("since") String since,
+                          @QueryParam("until") String until, @Context Request request) {
+        LogQuery query = query(type, actor, repo, since, until);
+        EventCache.View view = cache.view();
+        EntityTag tag = tag(view, query);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.cacheControl(cacheControl()).build();
+        }
+
+        String key = String.format("count|%s|%d", key(query), view.version());
+        EventCount count = (EventCount) cached(key);
+        if (count == null) {
+            count = new EventCount(view.count(query));
+            remember(key, count);
+        }
+        return Response.ok(count).tag(tag).cacheControl(cacheControl()).build();
+    }
+
+    private static LogQuery query(String type, String actor, String repo, String since, String until) {
+        Instant now = Instant.now();
+        try {
+            return new LogQuery(type, actor, repo,
+                    since != null ? LogQuery.parseTime(since, now) : null,
+                    until != null ? LogQuery.parseTime(until, now) : null);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    /**
+     * Response cache key of a query. Ages such as {@code since=1h} are keyed by the time
+     * they resolved to, so they are not served stale as the clock moves.
+     */
+    private static String key(LogQuery query) {
+        return String.format("%s|%s|%s|%d|%d", query.getType(), query.getActorContains(), query.getRepo(),
+                query.getSinceMillis(), query.getUntilMillis());
+    }
+
+    private Object cached(String key) {
+        Object response;
+        synchronized (responses) {
+            response = responses.get(key);
+        }
+        (response != null ? responseCacheHits : responseCacheMisses).mark();
+        return response;
+    }
+
+    private void remember(String key, Object response) {
+        synchronized (responses) {
+            responses.put(key, response);
+        }
+    }
+
+    /**
+     * Entity tag of the answer to {@code query}: the cache version, plus the resolved
+     * window when there is one, so that an age never matches a tag issued for an earlier
+     * window.
+     */
+    private static EntityTag tag(EventCache.View view, LogQuery query) {
+        String tag = Long.toHexString(view.version());
+        if (query.isTimeBounded()) {
+            tag += "-" + Long.toHexString(query.getSinceMillis()) + "-" + Long.toHexString(query.getUntilMillis());
+        }
+        return new EntityTag(tag);
+    }
+
+    private CacheControl cacheControl() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setMaxAge(config.maxAgeSeconds);
+        return cacheControl;
+    }
+
+    public static class EventPage {
+        private final List<LogEntry> events;
+        private final String next;
+
+        EventPage(List<LogEntry> events, String next) {
+            this.events = events;
+            this.next = next;
+        }
+
+        public List<LogEntry> getEvents() {
+            return events;
+        }
+
+        /**
+         * Cursor of the next page, or {@code null} on the last one.
+         */
+        public String getNext() {
+            return next;
+        }
+    }
+
+    public static class EventCount {
+        private final long count;
+
+        EventCount(long count) {
+            this.count = count;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
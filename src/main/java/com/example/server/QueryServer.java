@@ -0,0 +1,157 @@
+package com.example.server;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheck;
+import com.example.AppConfig.AppConfig;
+import com.example.service.EventCache;
+import com.example.service.LogStorageService;
+import io.dropwizard.configuration.ConfigurationFactory;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.core.Application;
+import io.dropwizard.core.Configuration;
+import io.dropwizard.core.server.DefaultServerFactory;
+import io.dropwizard.core.setup.Bootstrap;
+import io.dropwizard.core.setup.Environment;
+import io.dropwizard.jetty.ConnectorFactory;
+import io.dropwizard.jetty.HttpConnectorFactory;
+import io.dropwizard.logging.common.ExternalLoggingFactory;
+import org.eclipse.jetty.server.Server;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.logging.Logger;
+
+/**
+ * {@code --serve}: answers event queries over HTTP from an {@link EventCache} loaded once
+ * at startup, instead of a new JVM reading the store for every query.
+ * <p>
+ * The Dropwizard configuration is built from the {@code server} section of config.yaml
+ * rather than read from a file of its own, and logging is left to the application's
+ * existing setup. Metrics go to the registry shared with the rest of the run.
+ */
+public class QueryServer extends Application<QueryServer.ServerConfiguration> {
+    private static final Logger logger = Logger.getLogger(QueryServer.class.getName());
+
+    private final AppConfig config;
+    private final LogStorageService storage;
+    private final MetricRegistry metrics;
+    private final ServerConfiguration serverConfiguration;
+
+    private EventCache cache;
+    private CacheRefresher refresher;
+    private volatile Server server;
+    private volatile Throwable startupFailure;
+
+    public QueryServer(AppConfig config, LogStorageService storage, MetricRegistry metrics) {
+        this.config = config;
+        this.storage = storage;
+        this.metrics = metrics;
+        this.serverConfiguration = new ServerConfiguration(config.server);
+    }
+
+    /**
+     * Loads the cache and starts serving; returns once the server is accepting requests.
+     */
+    public void start() throws IOException {
+        long started = System.nanoTime();
+        cache = EventCache.load(storage);
+        logger.info(String.format("Loaded %d events into the query cache in %d ms",
+                cache.view().size(), (System.nanoTime() - started) / 1_000_000));
+
+        refresher = new CacheRefresher(cache, storage, config.server.reloadSeconds);
+        // Events fetched by this process reach the cache as they are stored
+        storage.addAppendListener(refresher::onAppend);
+
+        try {
+            run("server");
+        } catch (Exception e) {
+            throw new IOException("Failed to start the query server", e);
+        }
+        if (startupFailure != null || server == null) {
+            throw new IOException("Failed to start the query server", startupFailure);
+        }
+        logger.info(String.format("Serving queries on port %d (admin port %d)",
+                config.server.port, config.server.adminPort));
+    }
+
+    /**
+     * Blocks until the server is stopped.
+     */
+    public void join() throws IOException {
+        try {
+            server.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while serving");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "logparser";
+    }
+
+    @Override
+    public void initialize(Bootstrap<ServerConfiguration> bootstrap) {
+        bootstrap.setMetricRegistry(metrics);
+        bootstrap.setConfigurationFactoryFactory((klass, validator, objectMapper, propertyPrefix) ->
+                new ConfigurationFactory<ServerConfiguration>() {
+                    @Override
+                    public ServerConfiguration build(ConfigurationSourceProvider provider, String path) {
+                        return serverConfiguration;
+                    }
+
+                    @Override
+                    public ServerConfiguration build() {
+                        return serverConfiguration;
+                    }
+                });
+    }
+
+    @Override
+    public void run(ServerConfiguration configuration, Environment environment) {
+        environment.jersey().register(new EventsResource(cache, config.server, metrics));
+        environment.healthChecks().register("event-cache", new HealthCheck() {
+            @Override
+            protected Result check() {
+                return Result.healthy("%d events cached", cache.view().size());
+            }
+        });
+        environment.lifecycle().manage(refresher);
+        environment.lifecycle().addServerLifecycleListener(started -> server = started);
+    }
+
+    /**
+     * Keeps the application's own java.util.logging/Log4j2 setup instead of Logback.
+     */
+    @Override
+    protected void bootstrapLogging() {
+    }
+
+    /**
+     * Reported by {@link #start()} rather than exiting the JVM.
+     */
+    @Override
+    protected void onFatalError(Throwable t) {
+        startupFailure = t;
+    }
+
+    /**
+     * Dropwizard configuration for {@link QueryServer}, built from {@code server} in config.yaml.
+     */
+    public static class ServerConfiguration extends Configuration {
+        ServerConfiguration(AppConfig.ServerConfig server) {
+            HttpConnectorFactory application = new HttpConnectorFactory();
+            application.setPort(server.port);
+            HttpConnectorFactory admin = new HttpConnectorFactory();
+            admin.setPort(server.adminPort);
+
+            DefaultServerFactory serverFactory = new DefaultServerFactory();
+            serverFactory.setApplicationConnectors(Collections.<ConnectorFactory>singletonList(application));
+            serverFactory.setAdminConnectors(Collections.<ConnectorFactory>singletonList(admin));
+            setServerFactory(serverFactory);
+            setLoggingFactory(new ExternalLoggingFactory());
+        }
+    }
+}
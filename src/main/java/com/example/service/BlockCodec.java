@@ -0,0 +1,114 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of the blocks of a {@link CompressedSegment}. The codec's {@link #id()} is
+ * stored in every compressed segment, so a segment stays readable whatever codec is
+ * configured when it is read.
+ */
+interface BlockCodec {
+
+    /**
+     * Stored in compressed segments; never reuse an id for a different format.
+     */
+    int id();
+
+    String name();
+
+    byte[] compress(byte[] data, int length);
+
+    /**
+     * Decompresses {@code compressed} into {@code target}, which must receive exactly
+     * {@code targetLength} bytes.
+     */
+    void decompress(byte[] compressed, byte[] target, int targetLength) throws IOException;
+
+    /**
+     * The codec configured as {@code name}, or {@code null} for {@code "none"}.
+     *
+     * @throws IllegalArgumentException for an unknown name
+     */
+    static BlockCodec named(String name) {
+        if (name == null || name.isEmpty() || name.equals("none")) {
+            return null;
+        }
+        if (name.equals(Deflate.NAME)) {
+            return new Deflate();
+        }
+        throw new IllegalArgumentException("Unknown compression '" + name + "'; expected "
+                + Deflate.NAME + " or none");
+    }
+
+    static BlockCodec withId(int id) throws IOException {
+        if (id == Deflate.ID) {
+            return new Deflate();
+        }
+        throw new IOException("Unknown block codec " + id);
+    }
+
+    /**
+     * zlib-wrapped DEFLATE from the JDK; the Adler-32 trailer catches corrupted blocks.
+     */
+    class Deflate implements BlockCodec {
+        static final int ID = 1;
+        static final String NAME = "deflate";
+
+        @Override
+        public int id() {
+            return ID;
+        }
+
+        @Override
+        public String name() {
+            return NAME;
+        }
+
+        @Override
+        public byte[] compress(byte[] data, int length) {
+            Deflater deflater = new Deflater();
+            try {
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                byte[] out = new byte[Math.max(64, length / 4)];
+                int size = 0;
+                while (!deflater.finished()) {
+                    if (size == out.length) {
+                        out = Arrays.copyOf(out, out.length * 2);
+                    }
+                    size += deflater.deflate(out, size, out.length - size);
+                }
+                return Arrays.copyOf(out, size);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public void decompress(byte[] compressed, byte[] target, int targetLength) throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                int size = 0;
+                while (size < targetLength && !inflater.finished()) {
+                    int inflated = inflater.inflate(target, size, targetLength - size);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    size += inflated;
+                }
+                if (size != targetLength || !inflater.finished()) {
+                    throw new IOException("Corrupt compressed block: expected " + targetLength + " bytes");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed block", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
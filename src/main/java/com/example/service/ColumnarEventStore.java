@@ -0,0 +1,670 @@
+package com.example.service;
+
+import com.example.model.LogEntry;
+import com.example.model.LogEntryInterner;
+import com.example.utils.LongHashSet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Binary columnar event store.
+ * <p>
+ * Each event is one row spread over five fixed-width column files:
+ * <ul>
+ *     <li>{@code ids.col}: the id as a long; ids that are not canonical decimal numbers
+ *     are stored as {@code -(code + 1)} into {@code ids.dict};</li>
+ *     <li>{@code types.col}: int code into {@code types.dict}, or -1 for no type;</li>
+ *     <li>{@code actors.col}: int code into {@code actors.dict}, {@link #NO_ACTOR} or
+ *     {@link #NO_LOGIN};</li>
+ *     <li>{@code repos.col}: int code into {@code repos.dict}, or {@link #NO_REPO};</li>
+ *     <li>{@code times.col}: {@code created_at} in epoch milliseconds as a long, or
+ *     {@link LogQuery#NO_TIME}.</li>
+ * </ul>
+ * Reads memory-map the columns through {@link FileChannel#map} in chunks of rows and
+ * evaluate filters on the int codes, so a {@link LogEntry} is only built for rows that
+ * match. A {@link ZoneMap} in {@code zones.col} lets a time window skip whole blocks of
+ * rows, and deduplication read only the blocks whose id range holds an id. The committed row count lives in {@code rows}, written after the columns,
+ * dictionaries and zone map have been forced to disk; anything past it is ignored and
+ * overwritten.
+ */
+class ColumnarEventStore implements EventStore {
+    private static final Logger logger = Logger.getLogger(ColumnarEventStore.class.getName());
+
+    static final int NO_TYPE = -1;
+    static final int NO_ACTOR = -1;
+    static final int NO_LOGIN = -2;
+    static final int NO_REPO = -1;
+    private static final int CHUNK_ROWS = 1 << 20;
+    private static final int PARALLEL_ROWS = 1 << 16;
+
+    private final Path idsFile;
+    private final Path typesFile;
+    private final Path actorsFile;
+    private final Path reposFile;
+    private final Path timesFile;
+    private final Path rowsFile;
+    private final StringDictionary idDictionary;
+    private final StringDictionary typeDictionary;
+    private final StringDictionary actorDictionary;
+    private final StringDictionary repoDictionary;
+    private final ZoneMap zones;
+
+    private volatile long rows;
+    private long bytesWritten;
+    // Numeric ids of the rows in blocks without an id range, from before the zone map
+    private LongHashSet unrangedIds;
+    // Numeric ids of the blocks read by the current append, by block
+    private final Map<Integer, LongHashSet> blockIds = new HashMap<>();
+    // Ids of committed rows that are not numbers; the id dictionary may also hold ids of a
+    // batch that failed before its rows were committed
+    private Set<String> textIds;
+
+    ColumnarEventStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.idsFile = directory.resolve("ids.col");
+        this.typesFile = directory.resolve("types.col");
+        this.actorsFile = directory.resolve("actors.col");
+        this.reposFile = directory.resolve("repos.col");
+        this.timesFile = directory.resolve("times.col");
+        this.rowsFile = directory.resolve("rows");
+        this.idDictionary = new StringDictionary(directory.resolve("ids.dict"));
+        this.typeDictionary = new StringDictionary(directory.resolve("types.dict"));
+        this.actorDictionary = new StringDictionary(directory.resolve("actors.dict"));
+        this.repoDictionary = new StringDictionary(directory.resolve("repos.dict"));
+        this.zones = new ZoneMap(directory.resolve("zones.col"));
+
+        rows = committedRows();
+        if (rows > 0 && !Files.exists(timesFile)) {
+            addRepoAndTimeColumns();
+        }
+        zones.load(rows);
+    }
+
+    /**
+     * Stores written before repos and times were kept get both columns, with every
+     * existing row marked as having neither. Their blocks have no zone map yet, so they
+     * are never skipped, and their rows never match a time window.
+     */
+    private void addRepoAndTimeColumns() throws IOException {
+        logger.info(String.format("Adding repo and time columns to %d stored rows", rows));
+        int chunk = (int) Math.min(rows, CHUNK_ROWS);
+        ByteBuffer repos = ByteBuffer.allocate(chunk * Integer.BYTES);
+        ByteBuffer times = ByteBuffer.allocate(chunk * Long.BYTES);
+        for (int i = 0; i < chunk; i++) {
+            repos.putInt(NO_REPO);
+            times.putLong(LogQuery.NO_TIME);
+        }
+        for (long row = 0; row < rows; row += chunk) {
+            int count = (int) Math.min(chunk, rows - row);
+            repos.clear().position(count * Integer.BYTES);
+            times.clear().position(count * Long.BYTES);
+            writeColumn(reposFile, repos, row * Integer.BYTES);
+            // Written last: its presence marks the upgrade as done
+            writeColumn(timesFile, times, row * Long.BYTES);
+        }
+    }
+
+    /**
+     * One batch costs one write and one fsync per column and dictionary, then one for the
+     * row count. A numeric id is looked for only in the blocks whose {@link ZoneMap} id
+     * range holds it, each read from the id column at most once per batch, so a batch of
+     * new events usually reads none. Ids that are not numbers are collected from the whole
+     * id column, the first time a batch has one.
+     */
+    @Override
+    public synchronized List<LogEntry> append(List<LogEntry> logs) throws IOException {
+        if (zones.rows() != rows) {
+            // An earlier append failed between the zone map and the row count
+            zones.load(rows);
+        }
+        if (unrangedIds == null) {
+            loadUnrangedIds();
+        }
+        blockIds.clear();
+
+        ByteBuffer ids = ByteBuffer.allocate(logs.size() * Long.BYTES);
+        ByteBuffer types = ByteBuffer.allocate(logs.size() * Integer.BYTES);
+        ByteBuffer actors = ByteBuffer.allocate(logs.size() * Integer.BYTES);
+        ByteBuffer repos = ByteBuffer.allocate(logs.size() * Integer.BYTES);
+        ByteBuffer times = ByteBuffer.allocate(logs.size() * Long.BYTES);
+        LongHashSet batchIds = new LongHashSet(logs.size());
+        Set<String> batchTextIds = new HashSet<>();
+        // Looked up before any row is added, while the zone map covers only committed rows
+        long[] encodedIds = new long[logs.size()];
+        for (int i = 0; i < logs.size(); i++) {
+            encodedIds[i] = encodeId(logs.get(i).getId(), batchIds, batchTextIds);
+        }
+        List<LogEntry> fresh = new ArrayList<>(logs.size());
+        int appended = 0;
+
+        for (int i = 0; i < logs.size(); i++) {
+            LogEntry log = logs.get(i);
+            long id = encodedIds[i];
+            if (id == Long.MIN_VALUE) {
+                continue;
+            }
+            ids.putLong(id);
+            types.putInt(log.getType() != null ? typeDictionary.intern(log.getType()) : NO_TYPE);
+            actors.putInt(encodeActor(log.getActor()));
+            repos.putInt(log.getRepo() != null && log.getRepo().getName() != null
+                    ? repoDictionary.intern(log.getRepo().getName()) : NO_REPO);
+            long createdAt = LogQuery.createdAtMillis(log);
+            times.putLong(createdAt);
+            zones.add(createdAt, id >= 0 ? id : -1);
+            fresh.add(log);
+            appended++;
+        }
+        if (appended < logs.size()) {
+            logger.fine(String.format("Dropped %d duplicate log entries", logs.size() - appended));
+        }
+        if (appended == 0) {
+            return fresh;
+        }
+
+        // The dictionaries hold the strings of the entries, so their growth is counted as entry data
+        long dictionaryBytes = idDictionary.flush() + typeDictionary.flush()
+                + actorDictionary.flush() + repoDictionary.flush();
+        writeColumn(idsFile, ids, rows * Long.BYTES);
+        writeColumn(typesFile, types, rows * Integer.BYTES);
+        writeColumn(actorsFile, actors, rows * Integer.BYTES);
+        writeColumn(reposFile, repos, rows * Integer.BYTES);
+        writeColumn(timesFile, times, rows * Long.BYTES);
+        zones.write();
+
+        long committed = rows + appended;
+        try (FileChannel channel = FileChannel.open(rowsFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, committed), 0);
+            channel.force(false);
+        }
+        long first = rows;
+        rows = committed;
+        bytesWritten += (long) appended * (2 * Long.BYTES + 3 * Integer.BYTES) + dictionaryBytes;
+
+        // Rows added to the last block of an old store are in no id range either
+        ids.flip();
+        for (long row = first; ids.hasRemaining(); row++) {
+            long id = ids.getLong();
+            if (id >= 0 && !zones.hasIdRange(ZoneMap.blockOf(row))) {
+                unrangedIds.add(id);
+            }
+        }
+        if (textIds != null) {
+            textIds.addAll(batchTextIds);
+        }
+        blockIds.clear();
+        return fresh;
+    }
+
+    /**
+     * A writer flushes the dictionaries and the zone map before it commits the row count,
+     * so reading the count first means they cover every row it commits. The id sets are
+     * rebuilt on the next append.
+     */
+    @Override
+    public synchronized boolean refresh() throws IOException {
+        long committed = committedRows();
+        if (committed == rows) {
+            return false;
+        }
+        idDictionary.refresh();
+        typeDictionary.refresh();
+        actorDictionary.refresh();
+        repoDictionary.refresh();
+        zones.load(committed);
+        unrangedIds = null;
+        textIds = null;
+        rows = committed;
+        return true;
+    }
+
+    private long committedRows() throws IOException {
+        return Files.exists(rowsFile) ? ByteBuffer.wrap(Files.readAllBytes(rowsFile)).getLong() : 0;
+    }
+
+    @Override
+    public synchronized long bytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public synchronized void forEach(Consumer<LogEntry> consumer) throws IOException {
+        Decoder decoder = new Decoder();
+        try (RowCursor cursor = new RowCursor(0, rows, RowFilter.ALL)) {
+            while (cursor.next()) {
+                consumer.accept(decoder.decode(cursor));
+            }
+        }
+    }
+
+    /**
+     * Rows are read from the mapped columns as the stream is consumed, so a short-circuiting
+     * operation stops the scan; only rows appended before the call are visited. In
+     * parallel, the rows are split into ranges of {@value #PARALLEL_ROWS}.
+     */
+    @Override
+    public Stream<LogEntry> stream(LogQuery query, boolean parallel) throws IOException {
+        Decoder decoder = new Decoder();
+        RowFilter filter = filter(query);
+        if (!parallel) {
+            return stream(new RowCursor(0, decoder.rows, filter), decoder);
+        }
+
+        long ranges = (decoder.rows + PARALLEL_ROWS - 1) / PARALLEL_ROWS;
+        return LongStream.range(0, ranges).parallel().boxed()
+                .flatMap(range -> stream(new RowCursor(range * PARALLEL_ROWS,
+                        Math.min(decoder.rows, (range + 1) * PARALLEL_ROWS), filter), decoder));
+    }
+
+    private static Stream<LogEntry> stream(RowCursor cursor, Decoder decoder) {
+        Spliterator<LogEntry> entries = new Spliterators.AbstractSpliterator<LogEntry>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super LogEntry> action) {
+                try {
+                    if (!cursor.next()) {
+                        return false;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                action.accept(decoder.decode(cursor));
+                return true;
+            }
+        };
+        return StreamSupport.stream(entries, false).onClose(() -> {
+            try {
+                cursor.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Counts the rows matching {@code query} without building any {@link LogEntry}.
+     */
+    synchronized long count(LogQuery query) throws IOException {
+        long[] count = {0};
+        scan(filter(query), (row, id, type, actor) -> count[0]++);
+        return count[0];
+    }
+
+    private RowFilter filter(LogQuery query) {
+        return new RowFilter(
+                query.getType() == null ? null
+                        : typeDictionary.matching(type -> type.equalsIgnoreCase(query.getType())),
+                query.getActorContains() == null ? null
+                        : actorDictionary.matching(login -> login.toLowerCase(Locale.ROOT).contains(query.getActorContains())),
+                query.getRepo() == null ? null
+                        : repoDictionary.matching(name -> name.equalsIgnoreCase(query.getRepo())),
+                query.isTimeBounded() ? query : null);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return rows == 0;
+    }
+
+    @FunctionalInterface
+    interface RowVisitor {
+        void visit(long row, long id, int type, int actor);
+    }
+
+    /**
+     * Visits the committed rows accepted by {@code filter}.
+     */
+    void scan(RowFilter filter, RowVisitor visitor) throws IOException {
+        try (RowCursor cursor = new RowCursor(0, rows, filter)) {
+            while (cursor.next()) {
+                visitor.visit(cursor.row(), cursor.id(), cursor.type(), cursor.actor());
+            }
+        }
+    }
+
+    /**
+     * A query resolved against the dictionaries: a flag per type, actor and repo code, and
+     * the query itself for its time window. A {@code null} mask or query accepts every
+     * row; codes added after the masks were built are treated as not matching.
+     */
+    static class RowFilter {
+        static final RowFilter ALL = new RowFilter(null, null, null, null);
+
+        final boolean[] typeMatches;
+        final boolean[] actorMatches;
+        final boolean[] repoMatches;
+        final LogQuery timeWindow;
+
+        RowFilter(boolean[] typeMatches, boolean[] actorMatches, boolean[] repoMatches, LogQuery timeWindow) {
+            this.typeMatches = typeMatches;
+            this.actorMatches = actorMatches;
+            this.repoMatches = repoMatches;
+            this.timeWindow = timeWindow;
+        }
+
+        private static boolean accepts(boolean[] matches, int code) {
+            return matches == null || (code >= 0 && code < matches.length && matches[code]);
+        }
+    }
+
+    /**
+     * Walks the rows in {@code [first, end)}, mapping the columns {@link #CHUNK_ROWS} rows
+     * at a time and stopping only at rows accepted by the filter. With a time window, each
+     * {@link ZoneMap} block is looked up once: a block outside the window is skipped
+     * without reading its rows, and the times of a block wholly inside it are not read.
+     */
+    private class RowCursor implements Closeable {
+        private final long end;
+        private final RowFilter filter;
+
+        private FileChannel idChannel;
+        private FileChannel typeChannel;
+        private FileChannel actorChannel;
+        private FileChannel repoChannel;
+        private FileChannel timeChannel;
+        private MappedByteBuffer ids;
+        private MappedByteBuffer types;
+        private MappedByteBuffer actors;
+        private MappedByteBuffer repos;
+        private MappedByteBuffer times;
+        private long chunkStart;
+        private int chunkRows;
+        private int index = -1;
+        private int type;
+        private int actor;
+        private long blockEnd = -1;
+        private boolean skipBlock;
+        private boolean checkTimes;
+
+        RowCursor(long first, long end, RowFilter filter) {
+            this.end = end;
+            this.chunkStart = first;
+            this.filter = filter;
+        }
+
+        boolean next() throws IOException {
+            while (true) {
+                if (++index >= chunkRows && !mapNextChunk()) {
+                    return false;
+                }
+                if (filter.timeWindow != null) {
+                    long row = chunkStart + index;
+                    if (row >= blockEnd) {
+                        int block = ZoneMap.blockOf(row);
+                        blockEnd = (block + 1L) * ZoneMap.BLOCK_ROWS;
+                        skipBlock = !zones.overlaps(block, filter.timeWindow);
+                        checkTimes = !zones.within(block, filter.timeWindow);
+                    }
+                    if (skipBlock) {
+                        index = (int) Math.min(chunkRows, blockEnd - chunkStart) - 1;
+                        continue;
+                    }
+                    if (checkTimes && !filter.timeWindow.matchesTime(times.getLong(index * Long.BYTES))) {
+                        continue;
+                    }
+                }
+                type = types.getInt(index * Integer.BYTES);
+                if (!RowFilter.accepts(filter.typeMatches, type)) {
+                    continue;
+                }
+                if (filter.repoMatches != null && !RowFilter.accepts(filter.repoMatches, repo())) {
+                    continue;
+                }
+                actor = actors.getInt(index * Integer.BYTES);
+                if (!RowFilter.accepts(filter.actorMatches, actor)) {
+                    continue;
+                }
+                return true;
+            }
+        }
+
+        long row() {
+            return chunkStart + index;
+        }
+
+        long id() {
+            return ids.getLong(index * Long.BYTES);
+        }
+
+        int type() {
+            return type;
+        }
+
+        int actor() {
+            return actor;
+        }
+
+        int repo() {
+            return repos.getInt(index * Integer.BYTES);
+        }
+
+        long time() {
+            return times.getLong(index * Long.BYTES);
+        }
+
+        private boolean mapNextChunk() throws IOException {
+            long start = chunkStart + chunkRows;
+            if (start >= end) {
+                return false;
+            }
+            if (idChannel == null) {
+                idChannel = FileChannel.open(idsFile, StandardOpenOption.READ);
+                typeChannel = FileChannel.open(typesFile, StandardOpenOption.READ);
+                actorChannel = FileChannel.open(actorsFile, StandardOpenOption.READ);
+                repoChannel = FileChannel.open(reposFile, StandardOpenOption.READ);
+                timeChannel = FileChannel.open(timesFile, StandardOpenOption.READ);
+            }
+
+            chunkStart = start;
+            chunkRows = (int) Math.min(CHUNK_ROWS, end - start);
+            types = typeChannel.map(FileChannel.MapMode.READ_ONLY, start * Integer.BYTES, (long) chunkRows * Integer.BYTES);
+            actors = actorChannel.map(FileChannel.MapMode.READ_ONLY, start * Integer.BYTES, (long) chunkRows * Integer.BYTES);
+            ids = idChannel.map(FileChannel.MapMode.READ_ONLY, start * Long.BYTES, (long) chunkRows * Long.BYTES);
+            repos = repoChannel.map(FileChannel.MapMode.READ_ONLY, start * Integer.BYTES, (long) chunkRows * Integer.BYTES);
+            times = timeChannel.map(FileChannel.MapMode.READ_ONLY, start * Long.BYTES, (long) chunkRows * Long.BYTES);
+            index = 0;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            chunkStart = end;
+            chunkRows = 0;
+            for (FileChannel channel : new FileChannel[]{idChannel, typeChannel, actorChannel, repoChannel, timeChannel}) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes rows committed before it was created, from copies of the dictionaries
+     * taken after the row count, so it needs no locking and can be shared by threads.
+     * Types and actors are the canonical {@link LogEntryInterner} instances.
+     */
+    private class Decoder {
+        final long rows = ColumnarEventStore.this.rows;
+        private final String[] idValues = idDictionary.values();
+        private final String[] typeValues = internAll(typeDictionary.values());
+        private final String[] actorValues = actorDictionary.values();
+        private final LogEntry.Actor[] actorObjects = new LogEntry.Actor[actorValues.length];
+        private final String[] repoValues = repoDictionary.values();
+
+        LogEntry decode(RowCursor cursor) {
+            long id = cursor.id();
+            int type = cursor.type();
+            int actor = cursor.actor();
+            int repo = cursor.repo();
+            long time = cursor.time();
+            LogEntry.Actor decodedActor = null;
+            if (actor >= 0) {
+                // Racing threads store the same canonical instance
+                decodedActor = actorObjects[actor];
+                if (decodedActor == null) {
+                    decodedActor = LogEntryInterner.actor(actorValues[actor]);
+                    actorObjects[actor] = decodedActor;
+                }
+            } else if (actor == NO_LOGIN) {
+                decodedActor = LogEntryInterner.actor(null);
+            }
+            return new LogEntry(
+                    id >= 0 ? Long.toString(id) : idValues[(int) (-id - 1)],
+                    type >= 0 ? typeValues[type] : null,
+                    decodedActor,
+                    repo >= 0 ? LogEntryInterner.repo(repoValues[repo]) : null,
+                    time != LogQuery.NO_TIME ? Instant.ofEpochMilli(time).toString() : null
+            );
+        }
+    }
+
+    private static String[] internAll(String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = LogEntryInterner.type(values[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the column value for {@code id}, or {@link Long#MIN_VALUE} if it is missing,
+     * already stored or repeated within the batch. An id that is not a number may already
+     * be in the dictionary from a batch that failed; it is then stored under the same code.
+     */
+    private long encodeId(String id, LongHashSet batchIds, Set<String> batchTextIds) throws IOException {
+        if (id == null) {
+            return Long.MIN_VALUE;
+        }
+        long numeric = EventIdIndex.numericId(id);
+        if (numeric >= 0) {
+            if (isStored(numeric) || !batchIds.add(numeric)) {
+                return Long.MIN_VALUE;
+            }
+            return numeric;
+        }
+
+        if (textIds == null) {
+            loadTextIds();
+        }
+        if (textIds.contains(id) || !batchTextIds.add(id)) {
+            return Long.MIN_VALUE;
+        }
+        return -((long) idDictionary.intern(id) + 1);
+    }
+
+    private int encodeActor(LogEntry.Actor actor) {
+        if (actor == null) {
+            return NO_ACTOR;
+        }
+        return actor.getLogin() != null ? actorDictionary.intern(actor.getLogin()) : NO_LOGIN;
+    }
+
+    private boolean isStored(long id) throws IOException {
+        if (unrangedIds.contains(id)) {
+            return true;
+        }
+        // Newest blocks first: re-fetched events are the most recent ones
+        for (int block = zones.blocks() - 1; block >= 0; block--) {
+            if (zones.hasIdRange(block) && zones.mayContainId(block, id) && idsOf(block).contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The numeric ids of the committed rows of {@code block}.
+     */
+    private LongHashSet idsOf(int block) throws IOException {
+        LongHashSet ids = blockIds.get(block);
+        if (ids != null) {
+            return ids;
+        }
+        long first = (long) block * ZoneMap.BLOCK_ROWS;
+        int count = (int) (Math.min(rows, first + ZoneMap.BLOCK_ROWS) - first);
+        ByteBuffer data = ByteBuffer.allocate(count * Long.BYTES);
+        try (FileChannel channel = FileChannel.open(idsFile, StandardOpenOption.READ)) {
+            while (data.hasRemaining()) {
+                if (channel.read(data, first * Long.BYTES + data.position()) < 0) {
+                    break;
+                }
+            }
+        }
+        data.flip();
+        ids = new LongHashSet(count);
+        while (data.remaining() >= Long.BYTES) {
+            long id = data.getLong();
+            if (id >= 0) {
+                ids.add(id);
+            }
+        }
+        blockIds.put(block, ids);
+        return ids;
+    }
+
+    /**
+     * Collects the numeric ids of the blocks without an id range: those of a store
+     * written before the zone map, or whose zone map was lost.
+     */
+    private void loadUnrangedIds() throws IOException {
+        LongHashSet ids = new LongHashSet();
+        int blocks = zones.blocks();
+        for (int block = 0; block < blocks; block++) {
+            if (zones.hasIdRange(block)) {
+                continue;
+            }
+            long first = (long) block * ZoneMap.BLOCK_ROWS;
+            try (RowCursor cursor = new RowCursor(first, Math.min(rows, first + ZoneMap.BLOCK_ROWS), RowFilter.ALL)) {
+                while (cursor.next()) {
+                    if (cursor.id() >= 0) {
+                        ids.add(cursor.id());
+                    }
+                }
+            }
+        }
+        unrangedIds = ids;
+    }
+
+    private void loadTextIds() throws IOException {
+        Set<String> text = new HashSet<>();
+        String[] idValues = idDictionary.values();
+        scan(RowFilter.ALL, (row, id, type, actor) -> {
+            if (id < 0 && id != Long.MIN_VALUE && -id - 1 < idValues.length) {
+                text.add(idValues[(int) (-id - 1)]);
+            }
+        });
+        textIds = text;
+    }
+
+    private static void writeColumn(Path file, ByteBuffer data, long position) throws IOException {
+        data.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long at = position;
+            while (data.hasRemaining()) {
+                at += channel.write(data, at);
+            }
+            channel.force(false);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A sealed log segment rewritten as independently compressed blocks of about
+ * {@code blockBytes} uncompressed bytes each, cut after a newline so that no record
+ * spans two blocks.
+ * <p>
+ * Record positions stay the offsets they had in the uncompressed segment, so the id and
+ * secondary indexes keep pointing at the same records. A block index at the end of the
+ * file maps uncompressed offsets to blocks, and a reader decompresses only the blocks it
+ * touches. Layout: the blocks, then per block its uncompressed start and file offset
+ * ({@value #INDEX_ENTRY_BYTES} bytes), then a {@value #FOOTER_BYTES}-byte footer with the
+ * codec id, the block count, the uncompressed size and a magic number.
+ */
+class CompressedSegment {
+    private static final int MAGIC = 0x4e445a31; // "NDZ1"
+    private static final int INDEX_ENTRY_BYTES = 16;
+    private static final int FOOTER_BYTES = 20;
+
+    private final BlockCodec codec;
+    // Uncompressed offset of each block
+    private final long[] starts;
+    // File offset of each block, followed by the offset of the block index
+    private final long[] offsets;
+    private final long size;
+
+    private CompressedSegment(BlockCodec codec, long[] starts, long[] offsets, long size) {
+        this.codec = codec;
+        this.starts = starts;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    /**
+     * Reads the block index of a compressed segment.
+     */
+    static CompressedSegment open(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES);
+        if (fileSize < FOOTER_BYTES || readFully(channel, footer, fileSize - FOOTER_BYTES) < FOOTER_BYTES
+                || footer.getInt(16) != MAGIC) {
+            throw new IOException("Not a compressed segment");
+        }
+        BlockCodec codec = BlockCodec.withId(footer.getInt(0));
+        int blocks = footer.getInt(4);
+        long size = footer.getLong(8);
+        long indexOffset = fileSize - FOOTER_BYTES - (long) blocks * INDEX_ENTRY_BYTES;
+        if (blocks < 0 || indexOffset < 0) {
+            throw new IOException("Corrupt compressed segment footer");
+        }
+
+        ByteBuffer index = ByteBuffer.allocate(blocks * INDEX_ENTRY_BYTES);
+        readFully(channel, index, indexOffset);
+        long[] starts = new long[blocks];
+        long[] offsets = new long[blocks + 1];
+        for (int block = 0; block < blocks; block++) {
+            starts[block] = index.getLong(block * INDEX_ENTRY_BYTES);
+            offsets[block] = index.getLong(block * INDEX_ENTRY_BYTES + 8);
+        }
+        offsets[blocks] = indexOffset;
+        return new CompressedSegment(codec, starts, offsets, size);
+    }
+
+    /**
+     * Compresses the plain segment {@code source} into {@code target}. The data is written
+     * to a scratch file, forced to disk and then moved into place, so {@code target}
+     * either does not exist or is complete.
+     *
+     * @return the size of {@code target}
+     */
+    static long write(Path source, Path target, BlockCodec codec, int blockBytes) throws IOException {
+        Path scratch = target.resolveSibling(target.getFileName() + ".tmp");
+        long[] starts = new long[64];
+        long[] offsets = new long[64];
+        int blocks = 0;
+        long uncompressed = 0;
+        long written = 0;
+
+        try (InputStream in = Files.newInputStream(source);
+             FileChannel out = FileChannel.open(scratch, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[blockBytes * 2];
+            int length = 0;
+            boolean eof = false;
+
+            while (!eof) {
+                int read = in.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    length += read;
+                }
+
+                while (length > 0) {
+                    int cut = -1;
+                    for (int i = blockBytes - 1; i < length && cut < 0; i++) {
+                        if (buffer[i] == '\n') {
+                            cut = i + 1;
+                        }
+                    }
+                    if (cut < 0) {
+                        if (!eof) {
+                            // A record longer than the buffer: read on until its end
+                            if (length == buffer.length) {
+                                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                            }
+                            break;
+                        }
+                        cut = length;
+                    }
+
+                    if (blocks == starts.length) {
+                        starts = Arrays.copyOf(starts, blocks * 2);
+                        offsets = Arrays.copyOf(offsets, blocks * 2);
+                    }
+                    starts[blocks] = uncompressed;
+                    offsets[blocks] = written;
+                    blocks++;
+                    written += writeFully(out, ByteBuffer.wrap(codec.compress(buffer, cut)), written);
+                    uncompressed += cut;
+                    System.arraycopy(buffer, cut, buffer, 0, length - cut);
+                    length -= cut;
+                }
+            }
+
+            ByteBuffer index = ByteBuffer.allocate(blocks * INDEX_ENTRY_BYTES + FOOTER_BYTES);
+            for (int block = 0; block < blocks; block++) {
+                index.putLong(starts[block]).putLong(offsets[block]);
+            }
+            index.putInt(codec.id()).putInt(blocks).putLong(uncompressed).putInt(MAGIC);
+            index.flip();
+            written += writeFully(out, index, written);
+            out.force(true);
+        }
+
+        try {
+            Files.move(scratch, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(scratch);
+            throw e;
+        }
+        return written;
+    }
+
+    /**
+     * Uncompressed size of the segment.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * A reader over the uncompressed bytes; it keeps the last block it decompressed, so
+     * nearby reads cost one decompression. Not thread-safe.
+     */
+    SegmentedEventLog.SegmentFile reader(FileChannel channel) {
+        return new Reader(channel);
+    }
+
+    private int blockOf(long offset) {
+        int found = Arrays.binarySearch(starts, offset);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        long written = 0;
+        while (data.hasRemaining()) {
+            written += channel.write(data, position + written);
+        }
+        return written;
+    }
+
+    private class Reader implements SegmentedEventLog.SegmentFile {
+        private final FileChannel channel;
+        private int block = -1;
+        private byte[] data = new byte[0];
+        private int dataLength;
+
+        Reader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer target, long offset) throws IOException {
+            if (offset >= size || !target.hasRemaining()) {
+                return offset >= size ? -1 : 0;
+            }
+            int wanted = blockOf(offset);
+            if (wanted != block) {
+                load(wanted);
+            }
+            int from = (int) (offset - starts[block]);
+            int length = Math.min(target.remaining(), dataLength - from);
+            target.put(data, from, length);
+            return length;
+        }
+
+        private void load(int index) throws IOException {
+            long end = index + 1 < starts.length ? starts[index + 1] : size;
+            int length = Math.toIntExact(end - starts[index]);
+            ByteBuffer compressed = ByteBuffer.allocate(Math.toIntExact(offsets[index + 1] - offsets[index]));
+            if (readFully(channel, compressed, offsets[index]) < compressed.capacity()) {
+                throw new IOException("Truncated compressed block " + index);
+            }
+            if (data.length < length) {
+                data = new byte[length];
+            }
+            codec.decompress(compressed.array(), data, length);
+            block = index;
+            dataLength = length;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package com.example.service;
+
+import com.example.model.LogEntry;
+import com.example.model.LogEntryInterner;
+import com.example.utils.LongHashSet;
+import com.example.utils.StringCodes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * In-memory copy of the stored events for serving queries, kept as columns rather than
+ * objects: a {@code long} id and time and {@code int} type, actor and repo codes per row,
+ * about 36 bytes an event with the per-type row lists. Rows are in stored order.
+ * Pagination cursors name a row and the id of the entry in it: the row is where the next
+ * page starts while the contents only grow, and the id finds that entry again after a
+ * reload, which may drop rows or number them differently.
+ * <p>
+ * Appends and reloads are serialized; queries never lock. Entries added while a reload
+ * reads the store are kept aside and added to its result unless it read them too. Each
+ * change publishes an
+ * immutable {@link View} through a volatile field, and a query works on the view it
+ * started with. Arrays grow by copying, so rows below a view's size never change.
+ */
+public class EventCache {
+    // Ids that are not plain numbers are kept on the side; GitHub's are all numeric
+    private static final long TEXT_ID = Long.MIN_VALUE;
+    private static final int NO_TYPE = -1;
+    private static final int NO_REPO = -1;
+
+    private StringCodes typeCodes = new StringCodes();
+    private StringCodes actorCodes = new StringCodes();
+    private StringCodes repoCodes = new StringCodes();
+
+    private long[] ids = new long[1024];
+    private int[] types = new int[1024];
+    private int[] actors = new int[1024];
+    private int[] repos = new int[1024];
+    private long[] times = new long[1024];
+    private Map<Integer, String> textIds = new HashMap<>();
+    private String[] typeNames = new String[16];
+    private String[] actorNames = new String[1024];
+    private String[] actorNamesLower = new String[1024];
+    private String[] repoNames = new String[1024];
+    private int[][] rowsByType = new int[16][];
+    private int[] rowsByTypeCount = new int[16];
+    private int size;
+    private long generation;
+    // Entries added while a reload reads the store; null when no reload is running
+    private List<LogEntry> addedDuringReload;
+    private final Object reloadLock = new Object();
+
+    private volatile View view = new View(this);
+
+    /**
+     * Reads every stored entry into a new cache.
+     */
+    public static EventCache load(LogStorageService storage) throws IOException {
+        EventCache cache = new EventCache();
+        cache.reload(storage);
+        return cache;
+    }
+
+    /**
+     * Replaces the contents with everything now in {@code storage}. Queries keep being
+     * answered from the old contents until the new ones are complete. Entries {@link #add added}
+     * meanwhile, which the read may or may not have reached, end up in the new contents
+     * once.
+     */
+    public void reload(LogStorageService storage) throws IOException {
+        synchronized (reloadLock) {
+            synchronized (this) {
+                addedDuringReload = new ArrayList<>();
+            }
+            try {
+                swap(read(storage));
+            } finally {
+                synchronized (this) {
+                    addedDuringReload = null;
+                }
+            }
+        }
+    }
+
+    private static EventCache read(LogStorageService storage) throws IOException {
+        EventCache fresh = new EventCache();
+        List<LogEntry> batch = new ArrayList<>(4096);
+        try (Stream<LogEntry> logs = storage.streamLogs(new LogQuery(null, null))) {
+            logs.forEachOrdered(log -> {
+                batch.add(log);
+                if (batch.size() == 4096) {
+                    fresh.appendRows(batch);
+                    batch.clear();
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        fresh.appendRows(batch);
+        return fresh;
+    }
+
+    private synchronized void swap(EventCache fresh) {
+        fresh.appendMissing(addedDuringReload);
+        ids = fresh.ids;
+        types = fresh.types;
+        actors = fresh.actors;
+        repos = fresh.repos;
+        times = fresh.times;
+        textIds = fresh.textIds;
+        typeNames = fresh.typeNames;
+        actorNames = fresh.actorNames;
+        actorNamesLower = fresh.actorNamesLower;
+        repoNames = fresh.repoNames;
+        rowsByType = fresh.rowsByType;
+        rowsByTypeCount = fresh.rowsByTypeCount;
+        size = fresh.size;
+        typeCodes = fresh.typeCodes;
+        actorCodes = fresh.actorCodes;
+        repoCodes = fresh.repoCodes;
+        generation++;
+        view = new View(this);
+    }
+
+    /**
+     * Adds newly stored entries; meant as a {@link LogStorageService#addAppendListener} target.
+     */
+    public synchronized void add(List<LogEntry> logs) {
+        appendRows(logs);
+        if (addedDuringReload != null) {
+            addedDuringReload.addAll(logs);
+        }
+        view = new View(this);
+    }
+
+    /**
+     * Appends those of {@code logs} whose id is not in the cache yet.
+     */
+    private void appendMissing(List<LogEntry> logs) {
+        if (logs.isEmpty()) {
+            return;
+        }
+        LongHashSet numericIds = new LongHashSet(logs.size());
+        Set<String> otherIds = new HashSet<>();
+        for (LogEntry log : logs) {
+            long id = numericId(log.getId());
+            if (id != TEXT_ID) {
+                numericIds.add(id);
+            } else {
+                otherIds.add(log.getId());
+            }
+        }
+
+        LongHashSet presentNumeric = new LongHashSet();
+        Set<String> presentOther = new HashSet<>();
+        for (int row = 0; row < size; row++) {
+            if (ids[row] != TEXT_ID) {
+                if (numericIds.contains(ids[row])) {
+                    presentNumeric.add(ids[row]);
+                }
+            } else if (otherIds.contains(textIds.get(row))) {
+                presentOther.add(textIds.get(row));
+            }
+        }
+
+        List<LogEntry> missing = new ArrayList<>();
+        for (LogEntry log : logs) {
+            long id = numericId(log.getId());
+            if (id != TEXT_ID ? !presentNumeric.contains(id) : !presentOther.contains(log.getId())) {
+                missing.add(log);
+            }
+        }
+        appendRows(missing);
+    }
+
+    public View view() {
+        return view;
+    }
+
+    private void appendRows(List<LogEntry> logs) {
+        if (size + logs.size() > ids.length) {
+            int capacity = Math.max(size + logs.size(), ids.length + (ids.length >> 1));
+            ids = Arrays.copyOf(ids, capacity);
+            types = Arrays.copyOf(types, capacity);
+            actors = Arrays.copyOf(actors, capacity);
+            repos = Arrays.copyOf(repos, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+
+        for (LogEntry log : logs) {
+            int row = size++;
+            ids[row] = encodeId(row, log.getId());
+            int type = log.getType() != null ? typeCode(log.getType()) : NO_TYPE;
+            types[row] = type;
+            actors[row] = actorCode(log.getActor() != null ? log.getActor().getLogin() : null);
+            repos[row] = log.getRepo() != null && log.getRepo().getName() != null
+                    ? repoCode(log.getRepo().getName()) : NO_REPO;
+            times[row] = LogQuery.createdAtMillis(log);
+            if (type != NO_TYPE) {
+                addRowForType(type, row);
+            }
+        }
+    }
+
+    private long encodeId(int row, String id) {
+        long value = numericId(id);
+        if (value != TEXT_ID) {
+            return value;
+        }
+        // Copy-on-write so published views keep seeing the map they were given
+        Map<Integer, String> copy = new HashMap<>(textIds);
+        copy.put(row, id);
+        textIds = copy;
+        return TEXT_ID;
+    }
+
+    /**
+     * The value of an id that is a plain number, or {@link #TEXT_ID} if it has to be kept as text.
+     */
+    private static long numericId(String id) {
+        if (id != null) {
+            try {
+                long value = Long.parseLong(id);
+                // Only ids that print back the same way, so "007" stays "007"
+                if (value != TEXT_ID && Long.toString(value).equals(id)) {
+                    return value;
+                }
+            } catch (NumberFormatException e) {
+                // Not a plain number
+            }
+        }
+        return TEXT_ID;
+    }
+
+    private int typeCode(String type) {
+        int code = typeCodes.intern(type);
+        if (code == typeNames.length) {
+            typeNames = Arrays.copyOf(typeNames, code * 2);
+            rowsByType = Arrays.copyOf(rowsByType, code * 2);
+            rowsByTypeCount = Arrays.copyOf(rowsByTypeCount, code * 2);
+        }
+        if (typeNames[code] == null) {
+            typeNames[code] = type;
+            rowsByType[code] = new int[256];
+        }
+        return code;
+    }
+
+    private int actorCode(String login) {
+        int code = actorCodes.intern(login != null ? login : "");
+        if (code == actorNames.length) {
+            actorNames = Arrays.copyOf(actorNames, code * 2);
+            actorNamesLower = Arrays.copyOf(actorNamesLower, code * 2);
+        }
+        if (actorNames[code] == null) {
+            actorNames[code] = login != null ? login : "";
+            actorNamesLower[code] = actorNames[code].toLowerCase(Locale.ROOT);
+        }
+        return code;
+    }
+
+    private int repoCode(String name) {
+        int code = repoCodes.intern(name);
+        if (code == repoNames.length) {
+            repoNames = Arrays.copyOf(repoNames, code * 2);
+        }
+        if (repoNames[code] == null) {
+            repoNames[code] = name;
+        }
+        return code;
+    }
+
+    private void addRowForType(int type, int row) {
+        int count = rowsByTypeCount[type];
+        if (count == rowsByType[type].length) {
+            // Replaced, not grown in place: views hold the old array
+            rowsByType[type] = Arrays.copyOf(rowsByType[type], count * 2);
+        }
+        rowsByType[type][count] = row;
+        rowsByTypeCount[type] = count + 1;
+    }
+
+    /**
+     * Consistent, immutable state of the cache at one point in time.
+     */
+    public static class View {
+        private final long[] ids;
+        private final int[] types;
+        private final int[] actors;
+        private final int[] repos;
+        private final long[] times;
+        private final Map<Integer, String> textIds;
+        private final String[] typeNames;
+        private final int typeCount;
+        private final String[] actorNames;
+        private final String[] actorNamesLower;
+        private final int actorCount;
+        private final String[] repoNames;
+        private final int repoCount;
+        private final int[][] rowsByType;
+        private final int[] rowsByTypeCount;
+        private final int size;
+        private final long version;
+
+        private View(EventCache cache) {
+            this.ids = cache.ids;
+            this.types = cache.types;
+            this.actors = cache.actors;
+            this.repos = cache.repos;
+            this.times = cache.times;
+            this.textIds = cache.textIds;
+            this.typeNames = cache.typeNames;
+            this.typeCount = cache.typeCodes.size();
+            this.actorNames = cache.actorNames;
+            this.actorNamesLower = cache.actorNamesLower;
+            this.actorCount = cache.actorCodes.size();
+            this.repoNames = cache.repoNames;
+            this.repoCount = cache.repoCodes.size();
+            this.rowsByType = cache.rowsByType.clone();
+            this.rowsByTypeCount = cache.rowsByTypeCount.clone();
+            this.size = cache.size;
+            // Changes whenever the contents do; reloads may shrink or reorder rows
+            this.version = (cache.generation << 40) | cache.size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Identifies these contents; two views with the same version answer every query alike.
+         */
+        public long version() {
+            return version;
+        }
+
+        /**
+         * Up to {@code limit} entries matching {@code query}, in stored order, starting at
+         * {@code cursor}, or at the beginning if it is {@code null}. {@link Page#getNext()}
+         * is the cursor of the following page, or {@code null} if there is none.
+         *
+         * @throws IllegalArgumentException if {@code cursor} was not made by this cache
+         * @throws CursorExpiredException   if the entry it points at is no longer stored
+         */
+        public Page find(LogQuery query, String cursor, int limit) {
+            int from = cursor != null ? rowOf(cursor) : 0;
+            Matcher matcher = new Matcher(query);
+            List<LogEntry> entries = new ArrayList<>(Math.min(limit, 1024));
+            int next = -1;
+
+            int[] rows = matcher.rows;
+            if (rows != null) {
+                int count = matcher.rowCount;
+                int i = Arrays.binarySearch(rows, 0, count, Math.max(from, 0));
+                for (i = i < 0 ? -i - 1 : i; i < count; i++) {
+                    int row = rows[i];
+                    if (matcher.matchesOthers(row)) {
+                        if (entries.size() == limit) {
+                            next = row;
+                            break;
+                        }
+                        entries.add(entry(row));
+                    }
+                }
+            } else if (matcher.possible) {
+                for (int row = Math.max(from, 0); row < size; row++) {
+                    if (matcher.matches(row)) {
+                        if (entries.size() == limit) {
+                            next = row;
+                            break;
+                        }
+                        entries.add(entry(row));
+                    }
+                }
+            }
+            return new Page(entries, next >= 0 ? cursor(next) : null, version);
+        }
+
+        private String cursor(int row) {
+            String position = row + ":" + idAt(row);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * The row {@code cursor} points at: the row it names while that still holds the
+         * same entry, otherwise wherever the entry is now.
+         */
+        private int rowOf(String cursor) {
+            String position;
+            try {
+                position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            int separator = position.indexOf(':');
+            int row;
+            try {
+                row = separator > 0 ? Integer.parseInt(position.substring(0, separator)) : -1;
+            } catch (NumberFormatException e) {
+                row = -1;
+            }
+            if (row < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            String id = position.substring(separator + 1);
+
+            if (row < size && id.equals(idAt(row))) {
+                return row;
+            }
+            for (int candidate = 0; candidate < size; candidate++) {
+                if (id.equals(idAt(candidate))) {
+                    return candidate;
+                }
+            }
+            throw new CursorExpiredException("The entry this cursor points at is no longer stored");
+        }
+
+        private String idAt(int row) {
+            long id = ids[row];
+            return id == TEXT_ID ? textIds.get(row) : Long.toString(id);
+        }
+
+        public long count(LogQuery query) {
+            Matcher matcher = new Matcher(query);
+            if (matcher.rows != null && !matcher.filtersOthers) {
+                return matcher.rowCount;
+            }
+            long count = 0;
+            if (matcher.rows != null) {
+                for (int i = 0; i < matcher.rowCount; i++) {
+                    if (matcher.matchesOthers(matcher.rows[i])) {
+                        count++;
+                    }
+                }
+            } else if (matcher.possible) {
+                for (int row = 0; row < size; row++) {
+                    if (matcher.matches(row)) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        private LogEntry entry(int row) {
+            String actor = actorNames[actors[row]];
+            return new LogEntry(idAt(row),
+                    types[row] != NO_TYPE ? typeNames[types[row]] : null,
+                    LogEntryInterner.actor(actor.isEmpty() ? null : actor),
+                    repos[row] != NO_REPO ? LogEntryInterner.repo(repoNames[repos[row]]) : null,
+                    times[row] != LogQuery.NO_TIME ? Instant.ofEpochMilli(times[row]).toString() : null);
+        }
+
+        /**
+         * A query resolved against the dictionaries: the type filter to the rows of the
+         * matching type, the actor and repo filters to a flag per code.
+         */
+        private class Matcher {
+            private final LogQuery query;
+            private boolean possible = true;
+            private boolean[] typeMatches;
+            private int[] rows;
+            private int rowCount;
+            private boolean[] actorMatches;
+            private boolean[] repoMatches;
+            // Whether anything besides the type is filtered
+            private final boolean filtersOthers;
+
+            Matcher(LogQuery query) {
+                this.query = query;
+                if (query.getType() != null) {
+                    typeMatches = new boolean[typeCount];
+                    int matched = -1;
+                    int matchedCount = 0;
+                    for (int code = 0; code < typeCount; code++) {
+                        if (typeNames[code].equalsIgnoreCase(query.getType())) {
+                            typeMatches[code] = true;
+                            matched = code;
+                            matchedCount++;
+                        }
+                    }
+                    possible = matchedCount > 0;
+                    // Stored under a single spelling, as types nearly always are: walk that type's rows
+                    if (matchedCount == 1) {
+                        rows = rowsByType[matched];
+                        rowCount = rowsByTypeCount[matched];
+                    }
+                }
+                if (query.getActorContains() != null) {
+                    actorMatches = new boolean[actorCount];
+                    boolean any = false;
+                    for (int code = 0; code < actorCount; code++) {
+                        if (!actorNames[code].isEmpty() && actorNamesLower[code].contains(query.getActorContains())) {
+                            actorMatches[code] = true;
+                            any = true;
+                        }
+                    }
+                    possible &= any;
+                }
+                if (query.getRepo() != null) {
+                    repoMatches = new boolean[repoCount];
+                    boolean any = false;
+                    for (int code = 0; code < repoCount; code++) {
+                        if (repoNames[code].equalsIgnoreCase(query.getRepo())) {
+                            repoMatches[code] = true;
+                            any = true;
+                        }
+                    }
+                    possible &= any;
+                }
+                filtersOthers = actorMatches != null || repoMatches != null || query.isTimeBounded();
+            }
+
+            boolean matches(int row) {
+                if (typeMatches != null && (types[row] == NO_TYPE || !typeMatches[types[row]])) {
+                    return false;
+                }
+                return matchesOthers(row);
+            }
+
+            /**
+             * Everything but the type.
+             */
+            boolean matchesOthers(int row) {
+                return (actorMatches == null || actorMatches[actors[row]])
+                        && (repoMatches == null || (repos[row] != NO_REPO && repoMatches[repos[row]]))
+                        && query.matchesTime(times[row]);
+            }
+        }
+    }
+
+    public static class Page {
+        private final List<LogEntry> entries;
+        private final String next;
+        private final long version;
+
+        Page(List<LogEntry> entries, String next, long version) {
+            this.entries = entries;
+            this.next = next;
+            this.version = version;
+        }
+
+        public List<LogEntry> getEntries() {
+            return entries;
+        }
+
+        public String getNext() {
+            return next;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * A pagination cursor whose entry has since been dropped, as by retention.
+     */
+    public static class CursorExpiredException extends RuntimeException {
+        public CursorExpiredException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.service;
+
+import com.example.model.LogEntry;
+import com.example.utils.LongHashSet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Set of stored event ids used to drop duplicates at write time.
+ * <p>
+ * Numeric ids (all GitHub event ids) are kept in a {@link LongHashSet} and persisted
+ * as raw 8-byte values in {@code ids.idx}; any other id goes to {@code ids.txt}, one
+ * per line. The 16-byte header of {@code ids.idx} records the log position the index
+ * covers. The ids are forced to disk before the header is written, and the header is
+ * forced in turn, so the header never claims ids that were not persisted; on load any
+ * records appended past it (e.g. by a run that crashed between the two writes) are read
+ * back from the log.
+ */
+class EventIdIndex {
+    private static final Logger logger = Logger.getLogger(EventIdIndex.class.getName());
+
+    private static final int MAGIC = 0x45494431; // "EID1"
+    private static final int HEADER_BYTES = 16;
+    private static final int CATCH_UP_CHUNK = 100_000;
+
+    private final Path numericFile;
+    private final Path textFile;
+    private final LongHashSet numericIds = new LongHashSet();
+    private final Set<String> textIds = new HashSet<>();
+
+    EventIdIndex(Path directory) {
+        this.numericFile = directory.resolve("ids.idx");
+        this.textFile = directory.resolve("ids.txt");
+    }
+
+    /**
+     * Loads the persisted ids and catches up with anything in the log they do not cover.
+     */
+    void load(SegmentedEventLog log) throws IOException {
+        long started = System.nanoTime();
+        SegmentedEventLog.Position covered = readNumericIds();
+        readTextIds();
+
+        SegmentedEventLog.Position end = log.end();
+        if (covered.isBefore(end)) {
+            List<LogEntry> missing = new ArrayList<>(CATCH_UP_CHUNK);
+            long[] added = {0};
+            try {
+                log.forEachFrom(covered, entry -> {
+                    if (!contains(entry.getId())) {
+                        missing.add(entry);
+                    }
+                    if (missing.size() == CATCH_UP_CHUNK) {
+                        added[0] += missing.size();
+                        recordUnchecked(missing, covered);
+                        missing.clear();
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            added[0] += missing.size();
+            record(missing, end);
+            logger.info(String.format("Added %d ids from the log to the id index", added[0]));
+        }
+
+        logger.info(String.format("Loaded %d event ids in %d ms", size(),
+                (System.nanoTime() - started) / 1_000_000));
+    }
+
+    /**
+     * Returns the entries whose id is neither stored nor repeated earlier in the batch.
+     */
+    List<LogEntry> filterNew(List<LogEntry> batch) {
+        List<LogEntry> fresh = new ArrayList<>(batch.size());
+        LongHashSet batchNumeric = new LongHashSet(batch.size());
+        Set<String> batchText = new HashSet<>();
+
+        for (LogEntry entry : batch) {
+            String id = entry.getId();
+            if (id == null || contains(id)) {
+                continue;
+            }
+            long numeric = numericId(id);
+            boolean firstInBatch = numeric >= 0 ? batchNumeric.add(numeric) : batchText.add(id);
+            if (firstInBatch) {
+                fresh.add(entry);
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * Adds the ids of entries that have just been written to the log, which now ends at {@code end}.
+     */
+    void record(List<LogEntry> stored, SegmentedEventLog.Position end) throws IOException {
+        ByteBuffer numeric = ByteBuffer.allocate(stored.size() * Long.BYTES);
+        StringBuilder text = new StringBuilder();
+
+        for (LogEntry entry : stored) {
+            String id = entry.getId();
+            long value = numericId(id);
+            if (value >= 0) {
+                if (numericIds.add(value)) {
+                    numeric.putLong(value);
+                }
+            } else if (id != null && textIds.add(id)) {
+                text.append(id).append('\n');
+            }
+        }
+
+        if (text.length() > 0) {
+            try (FileChannel channel = FileChannel.open(textFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(false);
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(numericFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_BYTES) {
+                channel.truncate(0);
+                channel.write(header(SegmentedEventLog.Position.START), 0);
+            }
+            numeric.flip();
+            // Overwrite a torn trailing value rather than appending after it
+            long position = HEADER_BYTES + (channel.size() - HEADER_BYTES) / Long.BYTES * Long.BYTES;
+            while (numeric.hasRemaining()) {
+                position += channel.write(numeric, position);
+            }
+            // The ids have to be on disk before a header that covers them
+            channel.force(false);
+            ByteBuffer header = header(end);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+        }
+    }
+
+    boolean contains(String id) {
+        long numeric = numericId(id);
+        return numeric >= 0 ? numericIds.contains(numeric) : textIds.contains(id);
+    }
+
+    private void recordUnchecked(List<LogEntry> stored, SegmentedEventLog.Position end) {
+        try {
+            record(stored, end);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    int size() {
+        return numericIds.size() + textIds.size();
+    }
+
+    private SegmentedEventLog.Position readNumericIds() throws IOException {
+        if (!Files.exists(numericFile)) {
+            return SegmentedEventLog.Position.START;
+        }
+
+        try (FileChannel channel = FileChannel.open(numericFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (channel.read(header, 0) < HEADER_BYTES || header.getInt(0) != MAGIC) {
+                logger.warning("Ignoring unreadable id index " + numericFile + "; rebuilding from the log");
+                return SegmentedEventLog.Position.START;
+            }
+
+            // A torn trailing value is ignored; it is re-added when the log is caught up
+            long count = (channel.size() - HEADER_BYTES) / Long.BYTES;
+            ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 20);
+            long position = HEADER_BYTES;
+            long end = HEADER_BYTES + count * Long.BYTES;
+
+            while (position < end) {
+                chunk.clear().limit((int) Math.min(chunk.capacity(), end - position));
+                while (chunk.hasRemaining()) {
+                    int read = channel.read(chunk, position + chunk.position());
+                    if (read < 0) {
+                        break;
+                    }
+                }
+                chunk.flip();
+                LongBuffer values = chunk.asLongBuffer();
+                while (values.hasRemaining()) {
+                    numericIds.add(values.get());
+                }
+                position += chunk.limit();
+            }
+            return new SegmentedEventLog.Position(header.getInt(4), header.getLong(8));
+        }
+    }
+
+    private void readTextIds() throws IOException {
+        if (!Files.exists(textFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(textFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    textIds.add(line);
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer header(SegmentedEventLog.Position position) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(position.getSegment()).putLong(position.getOffset());
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Value of a canonical decimal id, or -1 if the id has to be kept as text.
+     */
+    static long numericId(String id) {
+        if (id == null || id.isEmpty() || id.length() > 18) {
+            return -1;
+        }
+        // Leading zeros would make distinct strings share a value
+        if (id.length() > 1 && id.charAt(0) == '0') {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.service;
+
+import com.example.model.LogEntry;
+import com.example.utils.HyperLogLog;
+import com.example.utils.SpaceSaving;
+import com.example.utils.StringCodes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Single-pass aggregation over stored events: counts by type, top actors and the number
+ * of distinct actors.
+ * <p>
+ * Types and logins are interned to dense codes and counted in {@code long[]} arrays, so
+ * the exact mode costs one table slot and one counter per distinct actor. The
+ * approximate mode replaces the per-actor counters with a {@link HyperLogLog} for the
+ * distinct count and a {@link SpaceSaving} sketch for the top actors, keeping memory
+ * fixed however many actors the history holds. Instances are not thread-safe; parallel
+ * scans build one per thread and {@link #merge(EventStats)} them.
+ */
+public class EventStats {
+    private static final String NO_TYPE = "(none)";
+    private static final int MIN_SKETCH_COUNTERS = 1_000;
+    private static final int SKETCH_COUNTERS_PER_RESULT = 100;
+
+    private final int top;
+    private final boolean approximate;
+
+    private long events;
+    private final StringCodes types = new StringCodes();
+    private long[] typeCounts = new long[16];
+
+    private final StringCodes actors;
+    private long[] actorCounts;
+    private final HyperLogLog distinctActors;
+    private final SpaceSaving topActors;
+
+    public EventStats(int top, boolean approximate) {
+        this.top = top;
+        this.approximate = approximate;
+        if (approximate) {
+            this.actors = null;
+            this.distinctActors = new HyperLogLog();
+            this.topActors = new SpaceSaving(Math.max(MIN_SKETCH_COUNTERS, top * SKETCH_COUNTERS_PER_RESULT));
+        } else {
+            this.actors = new StringCodes();
+            this.actorCounts = new long[1024];
+            this.distinctActors = null;
+            this.topActors = null;
+        }
+    }
+
+    public void add(LogEntry entry) {
+        events++;
+        typeCounts = increment(typeCounts, types.intern(entry.getType() != null ? entry.getType() : NO_TYPE), 1);
+
+        String login = entry.getActor() != null ? entry.getActor().getLogin() : null;
+        if (login == null) {
+            return;
+        }
+        if (approximate) {
+            distinctActors.add(login);
+            topActors.add(login);
+        } else {
+            actorCounts = increment(actorCounts, actors.intern(login), 1);
+        }
+    }
+
+    /**
+     * Adds the counts of {@code other}, whose codes are mapped through the strings they stand for.
+     */
+    public void merge(EventStats other) {
+        events += other.events;
+        for (int code = 0; code < other.types.size(); code++) {
+            typeCounts = increment(typeCounts, types.intern(other.types.valueOf(code)), other.typeCounts[code]);
+        }
+        if (approximate) {
+            distinctActors.merge(other.distinctActors);
+            topActors.merge(other.topActors);
+        } else {
+            for (int code = 0; code < other.actors.size(); code++) {
+                actorCounts = increment(actorCounts, actors.intern(other.actors.valueOf(code)), other.actorCounts[code]);
+            }
+        }
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    /**
+     * Event count per type, largest first.
+     */
+    public List<Count> countsByType() {
+        List<Count> counts = new ArrayList<>(types.size());
+        for (int code = 0; code < types.size(); code++) {
+            counts.add(new Count(types.valueOf(code), typeCounts[code], 0));
+        }
+        counts.sort(Count.LARGEST_FIRST);
+        return counts;
+    }
+
+    /**
+     * Number of distinct actor logins; an estimate within about
+     * {@link #distinctActorsError()} in approximate mode.
+     */
+    public long distinctActors() {
+        return approximate ? distinctActors.estimate() : actors.size();
+    }
+
+    public double distinctActorsError() {
+        return approximate ? distinctActors.standardError() : 0;
+    }
+
+    /**
+     * The actors with the most events, largest first, ties broken by login. In
+     * approximate mode a count may exceed the true one by up to {@link Count#getError()}.
+     */
+    public List<Count> topActors() {
+        List<Count> result = new ArrayList<>(top);
+        if (approximate) {
+            for (SpaceSaving.Counter counter : topActors.top(top)) {
+                result.add(new Count(counter.getValue(), counter.getCount(), counter.getError()));
+            }
+            return result;
+        }
+
+        // Keep the best codes in a small min-heap instead of sorting every actor
+        int[] heap = new int[Math.min(top, actors.size())];
+        int size = 0;
+        for (int code = 0; code < actors.size(); code++) {
+            if (size < heap.length) {
+                heap[size] = code;
+                siftUp(heap, size++);
+            } else if (size > 0 && ranksAbove(code, heap[0])) {
+                heap[0] = code;
+                siftDown(heap, size);
+            }
+        }
+        for (int code : heap) {
+            result.add(new Count(actors.valueOf(code), actorCounts[code], 0));
+        }
+        result.sort(Count.LARGEST_FIRST);
+        return result;
+    }
+
+    private boolean ranksAbove(int code, int other) {
+        if (actorCounts[code] != actorCounts[other]) {
+            return actorCounts[code] > actorCounts[other];
+        }
+        return actors.valueOf(code).compareTo(actors.valueOf(other)) < 0;
+    }
+
+    private void siftUp(int[] heap, int index) {
+        int code = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksAbove(heap[parent], code)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = code;
+    }
+
+    private void siftDown(int[] heap, int size) {
+        int code = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && ranksAbove(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!ranksAbove(code, heap[child])) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = code;
+    }
+
+    private static long[] increment(long[] counts, int code, long by) {
+        if (code >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(counts.length << 1, code + 1));
+        }
+        counts[code] += by;
+        return counts;
+    }
+
+    public static class Count {
+        static final Comparator<Count> LARGEST_FIRST =
+                Comparator.comparingLong(Count::getCount).reversed().thenComparing(Count::getValue);
+
+        private final String value;
+        private final long count;
+        private final long error;
+
+        Count(String value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Possible overcount included in {@link #getCount()}; 0 for exact counts.
+         */
+        public long getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.service;
+
+import com.example.model.LogEntry;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * On-disk format behind {@link LogStorageService}.
+ */
+interface EventStore {
+
+    /**
+     * Appends the entries whose id is not stored yet and returns them, in stored order.
+     */
+    List<LogEntry> append(List<LogEntry> logs) throws IOException;
+
+    /**
+     * Hands every stored entry to {@code consumer} in the order it was stored.
+     */
+    void forEach(Consumer<LogEntry> consumer) throws IOException;
+
+    /**
+     * Lazily streams the stored entries matching {@code query}; the encounter order is
+     * the order they were stored. Records are read as the stream is consumed; it must be
+     * closed. A {@code parallel} stream is split into independent chunks of storage.
+     */
+    Stream<LogEntry> stream(LogQuery query, boolean parallel) throws IOException;
+
+    boolean isEmpty();
+
+    /**
+     * One pass of maintenance that may run alongside appends and reads, such as
+     * compressing and dropping old data; formats without any do nothing.
+     */
+    default void compact() throws IOException {
+    }
+
+    /**
+     * Shrinks indexes that still cover data {@link #compact()} has dropped. Rewrites
+     * index files that readers in other processes may be using, so only the process
+     * writing to the store calls it; formats without such indexes do nothing.
+     */
+    default void pruneIndexes() throws IOException {
+    }
+
+    /**
+     * Catches up with entries appended, or dropped, by other processes since this instance
+     * was opened or last refreshed, without changing any file.
+     *
+     * @return whether stored entries were added or dropped; rewriting them in another
+     *         form, as compression does, is neither
+     */
+    boolean refresh() throws IOException;
+
+    /**
+     * Bytes of entry data this instance has written since it was opened, including
+     * dictionaries that hold the entries' strings; indexes are not counted.
+     */
+    long bytesWritten();
+}
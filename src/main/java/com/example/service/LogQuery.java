@@ -0,0 +1,169 @@
+package com.example.service;
+
+import com.example.model.LogEntry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Filter for stored log entries: an exact, case-insensitive event type, a
+ * case-insensitive substring of the actor login, an exact, case-insensitive repo name and
+ * a {@code [since, until)} window on {@code created_at}. Any part may be absent; entries
+ * without a {@code created_at} never match a time window.
+ */
+public class LogQuery {
+    /**
+     * {@link #createdAtMillis} of an entry without a readable {@code created_at}.
+     */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    private final String type;
+    private final String actorContains;
+    private final String repo;
+    private final long sinceMillis;
+    private final long untilMillis;
+
+    public LogQuery(String type, String actorContains) {
+        this(type, actorContains, null, null, null);
+    }
+
+    public LogQuery(String type, String actorContains, String repo, Instant since, Instant until) {
+        this.type = type == null || type.isEmpty() ? null : type;
+        this.actorContains = actorContains == null || actorContains.isEmpty()
+                ? null : actorContains.toLowerCase(Locale.ROOT);
+        this.repo = repo == null || repo.isEmpty() ? null : repo.toLowerCase(Locale.ROOT);
+        this.sinceMillis = since != null ? since.toEpochMilli() : NO_TIME;
+        this.untilMillis = until != null ? until.toEpochMilli() : Long.MAX_VALUE;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Lower-cased actor substring, or {@code null} when actors are not filtered.
+     */
+    public String getActorContains() {
+        return actorContains;
+    }
+
+    /**
+     * Lower-cased repo name, or {@code null} when repos are not filtered.
+     */
+    public String getRepo() {
+        return repo;
+    }
+
+    /**
+     * Inclusive lower bound of the window in epoch milliseconds; {@link #NO_TIME} if unbounded.
+     */
+    public long getSinceMillis() {
+        return sinceMillis;
+    }
+
+    /**
+     * Exclusive upper bound of the window in epoch milliseconds; {@link Long#MAX_VALUE} if unbounded.
+     */
+    public long getUntilMillis() {
+        return untilMillis;
+    }
+
+    public boolean isTimeBounded() {
+        return sinceMillis != NO_TIME || untilMillis != Long.MAX_VALUE;
+    }
+
+    public boolean isUnfiltered() {
+        return type == null && actorContains == null && repo == null && !isTimeBounded();
+    }
+
+    /**
+     * Whether a {@link #createdAtMillis} value lies in the window; always true without one.
+     */
+    public boolean matchesTime(long createdAtMillis) {
+        if (!isTimeBounded()) {
+            return true;
+        }
+        return createdAtMillis != NO_TIME && createdAtMillis >= sinceMillis && createdAtMillis < untilMillis;
+    }
+
+    public boolean matches(LogEntry log) {
+        if (type != null && (log.getType() == null || !log.getType().equalsIgnoreCase(type))) {
+            return false;
+        }
+        if (repo != null && (log.getRepo() == null || log.getRepo().getName() == null
+                || !log.getRepo().getName().equalsIgnoreCase(repo))) {
+            return false;
+        }
+        if (isTimeBounded() && !matchesTime(createdAtMillis(log))) {
+            return false;
+        }
+        if (actorContains != null) {
+            return log.getActor() != null &&
+                    log.getActor().getLogin() != null &&
+                    log.getActor().getLogin().toLowerCase(Locale.ROOT).contains(actorContains);
+        }
+        return true;
+    }
+
+    /**
+     * The entry's {@code created_at} in epoch milliseconds, or {@link #NO_TIME}.
+     */
+    public static long createdAtMillis(LogEntry log) {
+        String createdAt = log.getCreatedAt();
+        if (createdAt == null) {
+            return NO_TIME;
+        }
+        try {
+            return Instant.parse(createdAt).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // The API sends UTC ("...Z"); accept an explicit offset as well
+            try {
+                return OffsetDateTime.parse(createdAt).toInstant().toEpochMilli();
+            } catch (DateTimeParseException notOffset) {
+                return NO_TIME;
+            }
+        }
+    }
+
+    /**
+     * Reads a window bound as given on the command line or in a request: an ISO-8601
+     * instant ({@code 2024-05-01T12:00:00Z}, an offset is allowed), a date (midnight UTC)
+     * or an age before {@code now} in minutes, hours, days or weeks ({@code 90m},
+     * {@code 1h}, {@code 7d}, {@code 2w}).
+     *
+     * @throws IllegalArgumentException if {@code text} is none of these
+     */
+    public static Instant parseTime(String text, Instant now) {
+        String value = text.trim();
+        if (value.length() > 1 && value.chars().limit(value.length() - 1L).allMatch(Character::isDigit)) {
+            long amount = Long.parseLong(value.substring(0, value.length() - 1));
+            switch (Character.toLowerCase(value.charAt(value.length() - 1))) {
+                case 'm':
+                    return now.minus(Duration.ofMinutes(amount));
+                case 'h':
+                    return now.minus(Duration.ofHours(amount));
+                case 'd':
+                    return now.minus(Duration.ofDays(amount));
+                case 'w':
+                    return now.minus(Duration.ofDays(amount * 7));
+                default:
+                    break;
+            }
+        }
+        try {
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException notDateTime) {
+            try {
+                return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+            } catch (DateTimeParseException notDate) {
+                throw new IllegalArgumentException("Expected an ISO-8601 time, a date or an age such as 1h or 7d: "
+                        + text);
+            }
+        }
+    }
+}
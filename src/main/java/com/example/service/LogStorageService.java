@@ -1,32 +1,448 @@
 package com.example.service;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.example.AppConfig.AppConfig;
 import com.example.model.LogEntry;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.CollectionType;
 
-import java.io.File;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class LogStorageService implements Closeable {
+    private static final Logger logger = Logger.getLogger(LogStorageService.class.getName());
+    private static final int MIGRATION_BATCH_SIZE = 10_000;
+    private static final String WRITE_LOCK_FILE = "write.lock";
+
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_COLUMNAR = "columnar";
 
-public class LogStorageService {
-    private final File file = new File("logs.json");
     private final ObjectMapper mapper = new ObjectMapper();
+    private final Path directory;
+    private final EventStore store;
+    private final List<Consumer<List<LogEntry>>> appendListeners = new CopyOnWriteArrayList<>();
+    private final Timer appendTime;
+    private final Histogram appendBytes;
+    private final Meter storedEvents;
+    private final Counter duplicates;
+    private final Timer compactionTime;
+    private final int compactionIntervalSeconds;
+    private ScheduledExecutorService compaction;
+    private FileChannel writeLockChannel;
+    private FileLock writeLock;
+
+    public LogStorageService() throws IOException {
+        this(new AppConfig.StorageConfig());
+    }
+
+    public LogStorageService(AppConfig.StorageConfig config) throws IOException {
+        this(config, new MetricRegistry());
+    }
+
+    /**
+     * @param metrics registry for the write metrics: {@code append} time and bytes per
+     *                batch, {@code stored} events, {@code duplicates} skipped and
+     *                {@code compaction} time
+     */
+    public LogStorageService(AppConfig.StorageConfig config, MetricRegistry metrics) throws IOException {
+        this.appendTime = metrics.timer(MetricRegistry.name(LogStorageService.class, "append"));
+        this.appendBytes = metrics.histogram(MetricRegistry.name(LogStorageService.class, "append-bytes"));
+        this.storedEvents = metrics.meter(MetricRegistry.name(LogStorageService.class, "stored"));
+        this.duplicates = metrics.counter(MetricRegistry.name(LogStorageService.class, "duplicates"));
+        this.compactionTime = metrics.timer(MetricRegistry.name(LogStorageService.class, "compaction"));
+        this.compactionIntervalSeconds = config.compactionIntervalSeconds;
+
+        Path directory = Paths.get(config.directory);
+        Path legacyFile = Paths.get(config.legacyFile);
+
+        if (!Files.exists(directory) && Files.exists(legacyFile)) {
+            migrateLegacyFile(legacyFile, directory, config);
+        }
+        this.directory = directory;
+        this.store = openStore(directory, config);
+    }
 
-    public void saveLogs(List<LogEntry> logs) throws IOException {
-        List<LogEntry> existing = loadLogs();
-        existing.addAll(logs);
-        mapper.writerWithDefaultPrettyPrinter().writeValue(file, existing);
+    /**
+     * Makes this instance the only writer of the storage directory: takes an exclusive
+     * lock on its {@code write.lock}, held until {@link #close()} or the process ends.
+     * Appends take it themselves; modes that write call this first, so that they fail
+     * before fetching anything. Queries and {@link #refresh()} never take it, so a server
+     * can read the store while one other process writes to it.
+     *
+     * @throws IOException if another process, or another instance in this one, is writing
+     *                     to the directory
+     */
+    public synchronized void lockForWriting() throws IOException {
+        if (writeLock != null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        Path lockFile = directory.resolve(WRITE_LOCK_FILE);
+        FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException(String.format("Storage directory %s is being written by another process"
+                    + " (it holds %s); run one --fetch or --follow per directory", directory, lockFile));
+        }
+        writeLockChannel = channel;
+        writeLock = lock;
+    }
+
+    /**
+     * Appends the entries whose id is not stored yet and returns how many were written.
+     *
+     * @throws IOException also if another process is writing to the store; see {@link #lockForWriting()}
+     */
+    public int saveLogs(List<LogEntry> logs) throws IOException {
+        lockForWriting();
+        long bytesBefore = store.bytesWritten();
+        List<LogEntry> stored;
+        try (Timer.Context ignored = appendTime.time()) {
+            stored = store.append(logs);
+        }
+        appendBytes.update(store.bytesWritten() - bytesBefore);
+        storedEvents.mark(stored.size());
+        duplicates.inc(logs.size() - stored.size());
+
+        if (!stored.isEmpty()) {
+            for (Consumer<List<LogEntry>> listener : appendListeners) {
+                listener.accept(stored);
+            }
+        }
+        return stored.size();
+    }
+
+    /**
+     * Registers {@code listener} to be handed the entries of every append through this
+     * instance, after they are stored and only those that were new, in stored order.
+     * Listeners run on the appending thread.
+     */
+    public void addAppendListener(Consumer<List<LogEntry>> listener) {
+        appendListeners.add(listener);
+    }
+
+    /**
+     * Total size of the files in the storage directory. Any process writing to the
+     * store changes it, so comparing two readings tells whether anything was appended.
+     */
+    public long storedBytes() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        long bytes = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    bytes += Files.size(file);
+                }
+            }
+        }
+        return bytes;
     }
 
     public List<LogEntry> loadLogs() {
+        List<LogEntry> logs = new ArrayList<>();
         try {
-            if (!file.exists()) return new ArrayList<>();
-            CollectionType listType = mapper.getTypeFactory()
-                    .constructCollectionType(List.class, LogEntry.class);
-            return mapper.readValue(file, listType);
+            store.forEach(logs::add);
         } catch (IOException e) {
-            return new ArrayList<>();
+            logger.log(Level.SEVERE, "Failed to load stored logs", e);
+        }
+        return logs;
+    }
+
+    /**
+     * Returns the stored entries matching {@code query}, in the order they were stored.
+     */
+    public List<LogEntry> findLogs(LogQuery query) throws IOException {
+        try (Stream<LogEntry> logs = store.stream(query, false)) {
+            return logs.collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Lazily streams the stored entries matching {@code query}, in the order they were
+     * stored. Records are read from disk one at a time as the stream is consumed, so
+     * {@code limit} stops reading early. The stream must be closed; read failures
+     * surface as {@link UncheckedIOException}.
+     */
+    public Stream<LogEntry> streamLogs(LogQuery query) throws IOException {
+        return store.stream(query, false);
+    }
+
+    /**
+     * Runs {@code action} over the entries matching {@code query}. With a
+     * {@code parallelism} above 1 the stream is parallel, split into independent chunks
+     * of storage and run on a dedicated fork-join pool of that many threads; ordered
+     * operations such as {@code limit} and {@code forEachOrdered} still see the entries
+     * in the order they were stored.
+     */
+    public <R> R queryLogs(LogQuery query, int parallelism, Function<Stream<LogEntry>, R> action)
+            throws IOException {
+        if (parallelism <= 1) {
+            try (Stream<LogEntry> logs = store.stream(query, false)) {
+                return action.apply(logs);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (Stream<LogEntry> logs = store.stream(query, true)) {
+            // Parallel stream tasks run in the pool the terminal operation is started from
+            return pool.submit(() -> action.apply(logs)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while querying logs");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Log query failed", cause);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Counts the entries matching {@code query}; see {@link #queryLogs} for {@code parallelism}.
+     * The columnar format counts matching rows straight from its columns, on one thread,
+     * without building an entry for each.
+     */
+    public long countLogs(LogQuery query, int parallelism) throws IOException {
+        if (store instanceof ColumnarEventStore) {
+            return ((ColumnarEventStore) store).count(query);
+        }
+        return queryLogs(query, parallelism, Stream::count);
+    }
+
+    /**
+     * Aggregates the entries matching {@code query} in one pass: counts by type, the
+     * {@code top} actors and the number of distinct actors, estimated with fixed-size
+     * sketches when {@code approximate} is set. Each scanning thread fills its own
+     * {@link EventStats}, merged at the end.
+     */
+    public EventStats statsFor(LogQuery query, int top, boolean approximate, int parallelism) throws IOException {
+        return queryLogs(query, parallelism, logs ->
+                logs.collect(() -> new EventStats(top, approximate), EventStats::add, EventStats::merge));
+    }
+
+    public boolean isEmpty() {
+        return store.isEmpty();
+    }
+
+    /**
+     * Catches up with entries appended or dropped by other processes, such as a separate
+     * {@code --fetch}, since this instance was opened or last refreshed. Reads only, so it
+     * is safe while another process writes.
+     *
+     * @return whether stored entries were added or dropped; compaction only compressing
+     *         segments is neither
+     */
+    public boolean refresh() throws IOException {
+        return store.refresh();
+    }
+
+    /**
+     * Compresses sealed segments and drops the ones past the retention limits, once, on
+     * the calling thread. Appends and queries carry on meanwhile. The instance holding the
+     * write lock also prunes the indexes of the dropped segments.
+     */
+    public void compact() throws IOException {
+        try (Timer.Context ignored = compactionTime.time()) {
+            store.compact();
+            if (isWriter()) {
+                store.pruneIndexes();
+            }
+        }
+    }
+
+    private synchronized boolean isWriter() {
+        return writeLock != null;
+    }
+
+    /**
+     * Runs {@link #compact()} now and then every {@code compactionIntervalSeconds} on a
+     * daemon thread, for long-running modes; does nothing if the interval is 0.
+     */
+    public synchronized void startCompaction() {
+        if (compaction != null || compactionIntervalSeconds <= 0) {
+            return;
+        }
+        compaction = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storage-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compaction.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "Storage compaction failed; will retry", e);
+            }
+        }, 0, compactionIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the background compaction, if started, and gives up the write lock, if taken.
+     * The store keeps no other files open between calls; the instance must not be used
+     * afterwards.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (compaction != null) {
+            compaction.shutdownNow();
+            compaction = null;
+        }
+        if (writeLockChannel != null) {
+            // Closing the channel releases the lock
+            writeLockChannel.close();
+            writeLockChannel = null;
+            writeLock = null;
+        }
+    }
+
+    private EventStore openStore(Path directory, AppConfig.StorageConfig config) throws IOException {
+        String format = config.format != null ? config.format : FORMAT_NDJSON;
+        switch (format) {
+            case FORMAT_NDJSON:
+                requireNoFiles(directory, "*.col", format);
+                return new SegmentedEventStore(directory, config, mapper);
+            case FORMAT_COLUMNAR:
+                requireNoFiles(directory, SegmentedEventLog.SEGMENT_PREFIX + "*", format);
+                warnUnsupported(config);
+                return new ColumnarEventStore(directory);
+            default:
+                throw new IOException("Unknown storage format '" + format + "'; expected "
+                        + FORMAT_NDJSON + " or " + FORMAT_COLUMNAR);
+        }
+    }
+
+    /**
+     * The columnar format neither compresses its columns nor drops old rows. Its settings
+     * are still validated, so that switching formats does not turn up a bad value, and
+     * any that would have an effect in the ndjson format is reported as ignored.
+     */
+    private static void warnUnsupported(AppConfig.StorageConfig config) throws IOException {
+        BlockCodec codec;
+        try {
+            codec = BlockCodec.named(config.compression);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        if (codec != null) {
+            logger.warning(String.format("storage.compression '%s' is ignored: the columnar format stores its"
+                    + " columns uncompressed; set it to \"none\" for this format", config.compression));
+        }
+        if (config.retentionHours > 0) {
+            logger.warning(String.format("storage.retentionHours (%d) is ignored: the columnar format keeps"
+                    + " every row", config.retentionHours));
+        }
+        if (config.retentionMaxBytes > 0) {
+            logger.warning(String.format("storage.retentionMaxBytes (%d) is ignored: the columnar format keeps"
+                    + " every row", config.retentionMaxBytes));
+        }
+    }
+
+    /**
+     * Refuses to open a directory that already holds data written in the other format.
+     */
+    private static void requireNoFiles(Path directory, String glob, String format) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, glob)) {
+            if (files.iterator().hasNext()) {
+                throw new IOException(String.format(
+                        "Storage directory %s holds data in a format other than '%s'", directory, format));
+            }
+        }
+    }
+
+    /**
+     * One-time conversion of the old single-file {@code logs.json} array into the configured
+     * store format. The store is built in a scratch directory that is renamed into place only
+     * once complete, so an interrupted migration is simply redone on the next start.
+     * Duplicates piled up in logs.json before writes were deduplicated; they are dropped here.
+     */
+    private void migrateLegacyFile(Path legacyFile, Path directory, AppConfig.StorageConfig config)
+            throws IOException {
+        Path scratch = directory.resolveSibling(directory.getFileName() + ".migrating");
+        deleteRecursively(scratch);
+
+        logger.info("Migrating " + legacyFile + " to " + config.format + " storage in " + directory);
+        EventStore target = openStore(scratch, config);
+        long migrated = 0;
+
+        try (MappingIterator<LogEntry> it = mapper.readerFor(LogEntry.class).readValues(legacyFile.toFile())) {
+            List<LogEntry> batch = new ArrayList<>(MIGRATION_BATCH_SIZE);
+            while (it.hasNextValue()) {
+                batch.add(it.nextValue());
+                if (batch.size() == MIGRATION_BATCH_SIZE || !it.hasNextValue()) {
+                    migrated += target.append(batch).size();
+                    batch.clear();
+                }
+            }
+        }
+
+        Files.move(scratch, directory, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + ".migrated"),
+                StandardCopyOption.REPLACE_EXISTING);
+        logger.info(String.format("Migrated %d log entries from %s", migrated, legacyFile));
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
         }
     }
 
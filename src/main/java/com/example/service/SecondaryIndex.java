@@ -0,0 +1,761 @@
+package com.example.service;
+
+import com.example.model.LogEntry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Persisted secondary indexes over the event log, keyed by record ordinal
+ * (the 0-based position of a record in append order).
+ * <p>
+ * Layout under {@code <storage>/index}, the files of one generation in {@code <generation>/}:
+ * <ul>
+ *     <li>{@code locations.idx}: 12 bytes per ordinal (segment, offset) to find a record;</li>
+ *     <li>{@code postings.dat}: the posting lists, as chunks of ordinals appended once per
+ *     batch, one chunk per key the batch has. Keys are the lower-cased type, the
+ *     lower-cased repo name and every trigram of the lower-cased actor login, so a
+ *     substring query only reads the lists of its own trigrams;</li>
+ *     <li>{@code postings.dir}: one entry per chunk (kind, key, offset, ordinal count),
+ *     loaded into memory on open;</li>
+ *     <li>{@code times.idx}: 8 bytes per ordinal, the {@code created_at} in epoch
+ *     milliseconds ({@link LogQuery#NO_TIME} if absent);</li>
+ *     <li>{@code zones.idx}: a {@link ZoneMap} of the ordinals, so a time window only
+ *     reads the times of the blocks it partly overlaps;</li>
+ *     <li>{@code checkpoint} (in {@code index} itself): the log position, ordinal count,
+ *     generation and postings sizes the index covers.</li>
+ * </ul>
+ * Every batch is one positional write per file, forced to disk before the checkpoint is
+ * replaced (written to a scratch file and atomically moved over the old one), so the
+ * checkpoint never covers data that is not on disk. Anything past the checkpoint belongs
+ * to an interrupted write: it is ignored, overwritten by the next write, and the records
+ * it indexed are re-indexed from the log on open.
+ * <p>
+ * Once the postings hold many more chunks than keys, or a quarter of the ordinals point
+ * into segments that retention has dropped, the index is rewritten into the next
+ * generation: one chunk per key, without the dropped ordinals (whole zone blocks of them,
+ * at the front), and with the rest renumbered from 0. The checkpoint is then moved over
+ * to it and the previous generation deleted.
+ * <p>
+ * Blocks are in stored order, which is not time order (each fetch walks the feed
+ * newest first), so the rows of a partly overlapping block are checked one by one
+ * against the time column rather than binary-searched.
+ */
+class SecondaryIndex {
+    private static final Logger logger = Logger.getLogger(SecondaryIndex.class.getName());
+
+    private static final int MAGIC = 0x53494434; // "SID4"
+    private static final int CHECKPOINT_BYTES = 44;
+    private static final int LOCATION_BYTES = 12;
+    private static final int TIME_BYTES = Long.BYTES;
+    private static final int CATCH_UP_CHUNK = 100_000;
+    // Consolidated once there are this many chunks and four times as many as keys
+    private static final int MIN_CHUNKS_TO_CONSOLIDATE = 1 << 16;
+
+    private static final byte TYPE = 0;
+    private static final byte ACTOR = 1;
+    private static final byte REPO = 2;
+
+    private final Path directory;
+    private final Path checkpointFile;
+    // Zone map of the generation it was created for
+    private ZoneMap zones;
+    private int zonesGeneration = -1;
+    // Chunks of each key of each kind, as loaded from the postings directory
+    private final List<Map<String, Chunks>> postings = List.of(new HashMap<>(), new HashMap<>(), new HashMap<>());
+
+    private long count;
+    private SegmentedEventLog.Position covered = SegmentedEventLog.Position.START;
+    private int generation;
+    private long postingBytes;
+    private long directoryBytes;
+    private long chunks;
+    // Generation and size of the postings directory loaded into postings; -1 if none is
+    private int loadedGeneration = -1;
+    private long loadedDirectoryBytes;
+
+    SecondaryIndex(Path storageDirectory) {
+        this.directory = storageDirectory.resolve("index");
+        this.checkpointFile = directory.resolve("checkpoint");
+    }
+
+    /**
+     * Reads the checkpoint and the postings directory it covers, and indexes whatever
+     * the log holds beyond it.
+     */
+    void open(SegmentedEventLog log) throws IOException {
+        Files.createDirectories(directory);
+
+        readCheckpoint();
+        Files.createDirectories(generationDirectory(generation));
+        loadZones();
+        loadDirectory();
+        deleteOldGenerations();
+
+        SegmentedEventLog.Position end = log.end();
+        if (!covered.isBefore(end)) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        long before = count;
+        List<LogEntry> entries = new ArrayList<>(CATCH_UP_CHUNK);
+        List<SegmentedEventLog.Position> positions = new ArrayList<>(CATCH_UP_CHUNK);
+        log.scan(covered, (position, entry) -> {
+            entries.add(entry);
+            positions.add(position);
+            if (entries.size() == CATCH_UP_CHUNK) {
+                appendPostings(entries, positions);
+                entries.clear();
+                positions.clear();
+            }
+        });
+        appendPostings(entries, positions);
+        writeCheckpoint(end);
+        consolidateIfFragmented();
+
+        logger.info(String.format("Indexed %d log entries in %d ms", count - before,
+                (System.nanoTime() - started) / 1_000_000));
+    }
+
+    /**
+     * Indexes entries that have just been appended at {@code positions}; the log now ends at {@code end}.
+     */
+    void add(List<LogEntry> entries, SegmentedEventLog.Position[] positions, SegmentedEventLog.Position end)
+            throws IOException {
+        appendPostings(entries, Arrays.asList(positions));
+        writeCheckpoint(end);
+        consolidateIfFragmented();
+    }
+
+    /**
+     * Drops the ordinals of records in segments before {@code oldestSegment}, which
+     * retention has deleted, once they are a quarter of the index, so that the index
+     * shrinks with the log. Ordinals returned by {@link #candidates} before this are
+     * only valid with the {@link Locations} taken along with them.
+     */
+    void prune(int oldestSegment) throws IOException {
+        long dead = firstOrdinalIn(oldestSegment) / ZoneMap.BLOCK_ROWS * ZoneMap.BLOCK_ROWS;
+        if (dead == 0 || dead < count / 4) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        rewrite(dead);
+        logger.info(String.format("Pruned %d index entries of dropped segments in %d ms", dead,
+                (System.nanoTime() - started) / 1_000_000));
+    }
+
+    /**
+     * Where the current ordinals are, to {@link Locations#locate locate} the candidates
+     * returned alongside.
+     */
+    Locations locations() {
+        return new Locations(locationsFile(generation), count);
+    }
+
+    /**
+     * Returns the ascending ordinals of records that may match {@code query}, or {@code null}
+     * when the index cannot narrow the query down and the caller has to scan.
+     * Candidates from the actor trigrams still need to be checked against the query.
+     */
+    int[] candidates(LogQuery query) throws IOException {
+        List<int[]> lists = new ArrayList<>();
+
+        try {
+            if (query.getType() != null) {
+                lists.add(readPostings(TYPE, query.getType().toLowerCase(Locale.ROOT)));
+            }
+            if (query.getRepo() != null) {
+                lists.add(readPostings(REPO, query.getRepo()));
+            }
+            if (query.getActorContains() != null && query.getActorContains().length() >= 3) {
+                for (String trigram : trigrams(query.getActorContains())) {
+                    lists.add(readPostings(ACTOR, trigram));
+                }
+            }
+            if (query.isTimeBounded()) {
+                int[] inWindow = timeCandidates(query);
+                // Reading most of the log record by record costs more than scanning it
+                if (lists.isEmpty() && inWindow.length > count / 2) {
+                    return null;
+                }
+                lists.add(inWindow);
+            }
+        } catch (NoSuchFileException e) {
+            // Another process has rewritten the index since it was loaded; the next open
+            // loads the new generation
+            return null;
+        }
+        if (lists.isEmpty()) {
+            return null;
+        }
+
+        lists.sort((a, b) -> Integer.compare(a.length, b.length));
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Ascending ordinals whose {@code created_at} falls in the query's window. Blocks
+     * outside it are skipped and blocks wholly inside it taken whole; only the times of
+     * the blocks it partly overlaps are read.
+     */
+    private int[] timeCandidates(LogQuery query) throws IOException {
+        int[] ordinals = new int[256];
+        int n = 0;
+        int blocks = ZoneMap.blockOf(count + ZoneMap.BLOCK_ROWS - 1);
+        ByteBuffer times = ByteBuffer.allocate(ZoneMap.BLOCK_ROWS * TIME_BYTES);
+
+        try (FileChannel channel = FileChannel.open(timesFile(generation), StandardOpenOption.READ)) {
+            for (int block = 0; block < blocks; block++) {
+                if (!zones.overlaps(block, query)) {
+                    continue;
+                }
+                int first = block * ZoneMap.BLOCK_ROWS;
+                int end = (int) Math.min(count, first + ZoneMap.BLOCK_ROWS);
+                if (ordinals.length < n + (end - first)) {
+                    ordinals = Arrays.copyOf(ordinals, Math.max(ordinals.length * 2, n + (end - first)));
+                }
+                if (zones.within(block, query)) {
+                    for (int ordinal = first; ordinal < end; ordinal++) {
+                        ordinals[n++] = ordinal;
+                    }
+                    continue;
+                }
+
+                times.clear().limit((end - first) * TIME_BYTES);
+                while (times.hasRemaining() && channel.read(times, (long) first * TIME_BYTES + times.position()) > 0) {
+                    // keep reading until the block is in
+                }
+                for (int i = 0; i < times.position() / TIME_BYTES; i++) {
+                    if (query.matchesTime(times.getLong(i * TIME_BYTES))) {
+                        ordinals[n++] = first + i;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(ordinals, n);
+    }
+
+    private void appendPostings(List<LogEntry> entries, List<SegmentedEventLog.Position> positions)
+            throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        ByteBuffer locations = ByteBuffer.allocate(entries.size() * LOCATION_BYTES);
+        ByteBuffer times = ByteBuffer.allocate(entries.size() * TIME_BYTES);
+        List<Map<String, ByteArrayOutputStream>> batch = List.of(new HashMap<>(), new HashMap<>(), new HashMap<>());
+
+        for (int i = 0; i < entries.size(); i++) {
+            LogEntry entry = entries.get(i);
+            SegmentedEventLog.Position position = positions.get(i);
+            int ordinal = Math.toIntExact(count + i);
+            locations.putInt(position.getSegment()).putLong(position.getOffset());
+            long createdAt = LogQuery.createdAtMillis(entry);
+            times.putLong(createdAt);
+            zones.add(createdAt, EventIdIndex.numericId(entry.getId()));
+
+            if (entry.getType() != null) {
+                writeInt(batch.get(TYPE).computeIfAbsent(entry.getType().toLowerCase(Locale.ROOT),
+                        key -> new ByteArrayOutputStream()), ordinal);
+            }
+            if (entry.getActor() != null && entry.getActor().getLogin() != null) {
+                for (String trigram : trigrams(entry.getActor().getLogin().toLowerCase(Locale.ROOT))) {
+                    writeInt(batch.get(ACTOR).computeIfAbsent(trigram, key -> new ByteArrayOutputStream()), ordinal);
+                }
+            }
+            if (entry.getRepo() != null && entry.getRepo().getName() != null) {
+                writeInt(batch.get(REPO).computeIfAbsent(entry.getRepo().getName().toLowerCase(Locale.ROOT),
+                        key -> new ByteArrayOutputStream()), ordinal);
+            }
+        }
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteArrayOutputStream entriesOut = new ByteArrayOutputStream();
+        DataOutputStream directoryEntries = new DataOutputStream(entriesOut);
+        for (byte kind = TYPE; kind <= REPO; kind++) {
+            for (Map.Entry<String, ByteArrayOutputStream> posting : batch.get(kind).entrySet()) {
+                writeEntry(directoryEntries, kind, posting.getKey(), postingBytes + data.size(),
+                        posting.getValue().size() / Integer.BYTES);
+                posting.getValue().writeTo(data);
+            }
+        }
+
+        writeAt(locationsFile(generation), count * LOCATION_BYTES, locations.array());
+        writeAt(timesFile(generation), count * TIME_BYTES, times.array());
+        zones.write();
+        writeAt(postingsFile(generation), postingBytes, data.toByteArray());
+        writeAt(directoryFile(generation), directoryBytes, entriesOut.toByteArray());
+
+        postingBytes += data.size();
+        loadEntries(ByteBuffer.wrap(entriesOut.toByteArray()));
+        directoryBytes += entriesOut.size();
+        loadedDirectoryBytes = directoryBytes;
+        count += entries.size();
+    }
+
+    /**
+     * The ordinals of one key, in ascending order: chunks are appended in ordinal order
+     * and never cover the same ordinal twice, since a write past the checkpoint is
+     * overwritten rather than kept.
+     */
+    private int[] readPostings(byte kind, String key) throws IOException {
+        Chunks chunks = postings.get(kind).get(key);
+        if (chunks == null) {
+            return new int[0];
+        }
+
+        int[] ordinals = new int[Math.toIntExact(chunks.ordinals)];
+        int n = 0;
+        try (FileChannel channel = FileChannel.open(postingsFile(loadedGeneration), StandardOpenOption.READ)) {
+            for (int i = 0; i < chunks.size; i++) {
+                ByteBuffer data = ByteBuffer.allocate(chunks.counts[i] * Integer.BYTES);
+                readFully(channel, data, chunks.offsets[i]);
+                data.flip().asIntBuffer().get(ordinals, n, chunks.counts[i]);
+                n += chunks.counts[i];
+            }
+        }
+        return ordinals;
+    }
+
+    private void readCheckpoint() throws IOException {
+        count = 0;
+        covered = SegmentedEventLog.Position.START;
+        generation = 0;
+        postingBytes = 0;
+        directoryBytes = 0;
+        if (!Files.exists(checkpointFile)) {
+            return;
+        }
+
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(checkpointFile));
+        if (data.remaining() < CHECKPOINT_BYTES || data.getInt(0) != MAGIC) {
+            logger.warning("Ignoring unreadable or outdated index checkpoint; rebuilding secondary indexes");
+            deletePostings();
+            return;
+        }
+        covered = new SegmentedEventLog.Position(data.getInt(4), data.getLong(8));
+        count = data.getLong(16);
+        generation = data.getInt(24);
+        postingBytes = data.getLong(28);
+        directoryBytes = data.getLong(36);
+    }
+
+    /**
+     * Replaces the checkpoint once everything it covers has been forced to disk.
+     */
+    private void writeCheckpoint(SegmentedEventLog.Position end) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(CHECKPOINT_BYTES);
+        data.putInt(MAGIC).putInt(end.getSegment()).putLong(end.getOffset()).putLong(count)
+                .putInt(generation).putLong(postingBytes).putLong(directoryBytes);
+        Path scratch = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".writing");
+        try (FileChannel channel = FileChannel.open(scratch, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            data.flip();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(false);
+        }
+        Files.move(scratch, checkpointFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        SegmentedEventLog.forceDirectory(directory);
+        covered = end;
+    }
+
+    /**
+     * Brings the in-memory chunks up to the checkpointed postings directory, reading only
+     * the entries added since the last load when the generation has not changed.
+     */
+    private void loadDirectory() throws IOException {
+        if (generation != loadedGeneration || directoryBytes < loadedDirectoryBytes) {
+            for (Map<String, Chunks> keys : postings) {
+                keys.clear();
+            }
+            chunks = 0;
+            loadedGeneration = generation;
+            loadedDirectoryBytes = 0;
+        }
+        if (loadedDirectoryBytes == directoryBytes) {
+            return;
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(Math.toIntExact(directoryBytes - loadedDirectoryBytes));
+        try (FileChannel channel = FileChannel.open(directoryFile(generation), StandardOpenOption.READ)) {
+            readFully(channel, data, loadedDirectoryBytes);
+        }
+        data.flip();
+        loadEntries(data);
+        loadedDirectoryBytes = directoryBytes;
+    }
+
+    private void loadEntries(ByteBuffer data) {
+        while (data.hasRemaining()) {
+            byte kind = data.get();
+            byte[] key = new byte[data.getInt()];
+            data.get(key);
+            long offset = data.getLong();
+            int ordinals = data.getInt();
+            postings.get(kind).computeIfAbsent(new String(key, StandardCharsets.UTF_8), k -> new Chunks())
+                    .add(offset, ordinals);
+            chunks++;
+        }
+    }
+
+    /**
+     * Rewrites the index once reads would have to gather many small chunks per key.
+     */
+    private void consolidateIfFragmented() throws IOException {
+        int keys = postings.stream().mapToInt(Map::size).sum();
+        if (chunks < MIN_CHUNKS_TO_CONSOLIDATE || chunks < 4L * keys) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        long before = chunks;
+        rewrite(0);
+        logger.info(String.format("Consolidated %d posting chunks into %d in %d ms", before, chunks,
+                (System.nanoTime() - started) / 1_000_000));
+    }
+
+    /**
+     * Writes the next generation without the first {@code drop} ordinals, a multiple of
+     * {@link ZoneMap#BLOCK_ROWS}, renumbering the rest from 0 and giving each key one
+     * chunk; then moves the checkpoint over to it and deletes the current generation.
+     */
+    private void rewrite(long drop) throws IOException {
+        int next = generation + 1;
+        Path nextDirectory = generationDirectory(next);
+        // Left over from a rewrite interrupted before it moved the checkpoint
+        deleteGeneration(next);
+        Files.createDirectories(nextDirectory);
+
+        copyRange(locationsFile(generation), locationsFile(next), drop * LOCATION_BYTES, count * LOCATION_BYTES);
+        copyRange(timesFile(generation), timesFile(next), drop * TIME_BYTES, count * TIME_BYTES);
+        zones.writeTo(zonesFile(next), ZoneMap.blockOf(drop));
+
+        int first = Math.toIntExact(drop);
+        long written = 0;
+        ByteArrayOutputStream entriesOut = new ByteArrayOutputStream();
+        DataOutputStream directoryEntries = new DataOutputStream(entriesOut);
+        try (FileChannel out = FileChannel.open(postingsFile(next), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (byte kind = TYPE; kind <= REPO; kind++) {
+                for (String key : postings.get(kind).keySet()) {
+                    int[] ordinals = readPostings(kind, key);
+                    int from = Arrays.binarySearch(ordinals, first);
+                    from = from >= 0 ? from : -from - 1;
+                    if (from == ordinals.length) {
+                        continue;
+                    }
+                    ByteBuffer data = ByteBuffer.allocate((ordinals.length - from) * Integer.BYTES);
+                    for (int i = from; i < ordinals.length; i++) {
+                        data.putInt(ordinals[i] - first);
+                    }
+                    data.flip();
+                    writeEntry(directoryEntries, kind, key, written, ordinals.length - from);
+                    while (data.hasRemaining()) {
+                        written += out.write(data, written);
+                    }
+                }
+            }
+            out.force(false);
+        }
+        writeAt(directoryFile(next), 0, entriesOut.toByteArray());
+        SegmentedEventLog.forceDirectory(nextDirectory);
+
+        int previous = generation;
+        generation = next;
+        count -= drop;
+        postingBytes = written;
+        directoryBytes = entriesOut.size();
+        writeCheckpoint(covered);
+        deleteGeneration(previous);
+        loadZones();
+        loadDirectory();
+    }
+
+    /**
+     * The first ordinal whose record is in {@code segment} or a later one; ordinals are
+     * in log order, so the segments in the locations only ever grow.
+     */
+    private long firstOrdinalIn(int segment) throws IOException {
+        long low = 0;
+        long high = count;
+        ByteBuffer value = ByteBuffer.allocate(Integer.BYTES);
+        try (FileChannel channel = FileChannel.open(locationsFile(generation), StandardOpenOption.READ)) {
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                value.clear();
+                readFully(channel, value, middle * LOCATION_BYTES);
+                if (value.getInt(0) < segment) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+        }
+        return low;
+    }
+
+    private void loadZones() throws IOException {
+        if (zonesGeneration != generation) {
+            zones = new ZoneMap(zonesFile(generation));
+            zonesGeneration = generation;
+        }
+        zones.load(count);
+    }
+
+    /**
+     * Deletes the generations before the checkpointed one, left behind by a rewrite that
+     * was interrupted after it moved the checkpoint. Later generations may belong to a
+     * rewrite still being written and are replaced when it is redone.
+     */
+    private void deleteOldGenerations() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path file : files) {
+                try {
+                    int fileGeneration = Integer.parseInt(file.getFileName().toString());
+                    if (fileGeneration < generation) {
+                        deleteGeneration(fileGeneration);
+                    }
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+    }
+
+    private void deleteGeneration(int generation) throws IOException {
+        deleteTree(generationDirectory(generation));
+    }
+
+    /**
+     * Deletes every index file, including those of the previous layouts (the generation's
+     * files directly in {@code index}, and per-key posting files before that), before the
+     * index is rebuilt.
+     */
+    private void deletePostings() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (!file.equals(checkpointFile)) {
+                    deleteTree(file);
+                }
+            }
+        }
+        loadedGeneration = -1;
+        zonesGeneration = -1;
+    }
+
+    private static void deleteTree(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.list(path)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    deleteTree(file);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+
+    static Set<String> trigrams(String text) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.add(text.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private Path generationDirectory(int generation) {
+        return directory.resolve(Integer.toString(generation));
+    }
+
+    private Path locationsFile(int generation) {
+        return generationDirectory(generation).resolve("locations.idx");
+    }
+
+    private Path timesFile(int generation) {
+        return generationDirectory(generation).resolve("times.idx");
+    }
+
+    private Path zonesFile(int generation) {
+        return generationDirectory(generation).resolve("zones.idx");
+    }
+
+    private Path postingsFile(int generation) {
+        return generationDirectory(generation).resolve("postings.dat");
+    }
+
+    private Path directoryFile(int generation) {
+        return generationDirectory(generation).resolve("postings.dir");
+    }
+
+    private static void writeEntry(DataOutputStream out, byte kind, String key, long offset, int ordinals)
+            throws IOException {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(kind);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeLong(offset);
+        out.writeInt(ordinals);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("Index file ends before the checkpoint: " + channel);
+            }
+        }
+    }
+
+    /**
+     * Copies bytes {@code from} to {@code to} of {@code source}, or as many of them as it
+     * holds, into a new {@code target} and forces it to disk.
+     */
+    private static void copyRange(Path source, Path target, long from, long to) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long end = Math.min(to, in.size());
+            long at = from;
+            while (at < end) {
+                at += in.transferTo(at, end - at, out);
+            }
+            out.force(false);
+        }
+    }
+
+    /**
+     * Writes {@code data} at {@code position} and forces it to disk.
+     */
+    private static void writeAt(Path file, long position, byte[] data) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * The locations file of one generation and how many ordinals it holds. Taken together
+     * with the candidates, so that they are located in the generation they belong to even
+     * if the index is rewritten in between; if that generation has been deleted by then,
+     * locating fails with a {@link NoSuchFileException}.
+     */
+    static final class Locations {
+        private final Path file;
+        private final long count;
+
+        private Locations(Path file, long count) {
+            this.file = file;
+            this.count = count;
+        }
+
+        /**
+         * Maps ascending ordinals to record positions in the log.
+         */
+        List<SegmentedEventLog.Position> locate(int[] ordinals) throws IOException {
+            List<SegmentedEventLog.Position> positions = new ArrayList<>(ordinals.length);
+            if (ordinals.length == 0) {
+                return positions;
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = Math.min(channel.size(), count * LOCATION_BYTES);
+                ByteBuffer window = ByteBuffer.allocate(LOCATION_BYTES * 4096);
+                long windowStart = -1;
+
+                for (int ordinal : ordinals) {
+                    long at = (long) ordinal * LOCATION_BYTES;
+                    if (at + LOCATION_BYTES > size) {
+                        break;
+                    }
+                    // Nearby ordinals are served from the window already read
+                    if (windowStart < 0 || at < windowStart || at + LOCATION_BYTES > windowStart + window.limit()) {
+                        window.clear();
+                        window.limit((int) Math.min(window.capacity(), size - at));
+                        while (window.hasRemaining() && channel.read(window, at + window.position()) > 0) {
+                            // keep reading until the window is full
+                        }
+                        window.flip();
+                        windowStart = at;
+                    }
+                    int offset = (int) (at - windowStart);
+                    positions.add(new SegmentedEventLog.Position(window.getInt(offset), window.getLong(offset + 4)));
+                }
+            }
+            return positions;
+        }
+    }
+
+    /**
+     * Chunks of one key's posting list, in append order.
+     */
+    private static final class Chunks {
+        long[] offsets = new long[1];
+        int[] counts = new int[1];
+        int size;
+        long ordinals;
+
+        void add(long offset, int count) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            offsets[size] = offset;
+            counts[size] = count;
+            size++;
+            ordinals += count;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Background maintenance of a {@link SegmentedEventLog}'s sealed segments: drops the
+ * oldest segments that fall outside the retention rules and rewrites the others as
+ * {@link CompressedSegment}s.
+ * <p>
+ * Only whole sealed segments are touched, never the active one, and nothing is locked
+ * that appends or reads wait on: a compressed segment is moved into place before its
+ * plain file is deleted, and readers fall back from one form to the other, or skip a
+ * segment that has been dropped. Segments are not merged or rewritten without their
+ * duplicates, since either would move records the indexes point at; ids are already
+ * deduplicated when events are stored.
+ * <p>
+ * A lock file keeps two processes sharing the directory from compacting at once.
+ * Retention by age goes by the segment file's modification time, which is when its
+ * last record was stored; it is carried over to the compressed file.
+ * <p>
+ * Retention by size counts the indexes and everything else in the directory with the
+ * segments. The secondary indexes are pruned after dropped segments by the writing
+ * process ({@link EventStore#pruneIndexes()}); until then readers skip entries whose
+ * segment is gone. The id index keeps an entry for every event ever stored, so that
+ * dropped events are not stored again, and only ever grows.
+ */
+class SegmentCompactor {
+    private static final Logger logger = Logger.getLogger(SegmentCompactor.class.getName());
+
+    private final Path directory;
+    private final SegmentedEventLog eventLog;
+    private final BlockCodec codec;
+    private final int blockBytes;
+    private final Duration maxAge;
+    private final long maxBytes;
+
+    /**
+     * @param codec    codec for sealed segments, or {@code null} to leave them plain
+     * @param maxAge   segments last written longer ago are dropped; {@code null} to keep them
+     * @param maxBytes the oldest segments are dropped while the whole directory takes up
+     *                 more; 0 for no limit
+     */
+    SegmentCompactor(Path directory, SegmentedEventLog eventLog, BlockCodec codec, int blockBytes,
+                     Duration maxAge, long maxBytes) {
+        this.directory = directory;
+        this.eventLog = eventLog;
+        this.codec = codec;
+        this.blockBytes = blockBytes;
+        this.maxAge = maxAge;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Runs one pass, unless another process or thread is already running one.
+     */
+    void compact() throws IOException {
+        try (FileChannel lockChannel = FileChannel.open(directory.resolve("compaction.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = tryLock(lockChannel)) {
+            if (lock == null) {
+                logger.fine("Compaction of " + directory + " is already running");
+                return;
+            }
+            compactLocked();
+        }
+    }
+
+    private void compactLocked() throws IOException {
+        long started = System.nanoTime();
+        TreeMap<Integer, Path> segments = listSegments();
+        if (segments.isEmpty()) {
+            return;
+        }
+        // Other processes may have started newer segments than this one knows of
+        int active = Math.max(segments.lastKey(), eventLog.end().getSegment());
+        Path activeFile = segments.remove(active);
+
+        int dropped = 0;
+        if (maxAge != null) {
+            FileTime cutoff = FileTime.from(Instant.now().minus(maxAge));
+            while (!segments.isEmpty()
+                    && Files.getLastModifiedTime(segments.firstEntry().getValue()).compareTo(cutoff) < 0) {
+                drop(segments.pollFirstEntry().getValue(), "older than " + maxAge);
+                dropped++;
+            }
+        }
+
+        int compressed = 0;
+        if (codec != null) {
+            for (Map.Entry<Integer, Path> segment : segments.entrySet()) {
+                if (segment.getValue().getFileName().toString().endsWith(SegmentedEventLog.SEGMENT_SUFFIX)) {
+                    segment.setValue(compress(segment.getKey(), segment.getValue()));
+                    compressed++;
+                }
+            }
+        }
+
+        if (maxBytes > 0) {
+            long indexBytes = indexBytes();
+            if (indexBytes > maxBytes / 2) {
+                logger.warning(String.format("The indexes of %s take %d of the %d bytes retention allows,"
+                        + " leaving little room for events; raise storage.retentionMaxBytes", directory,
+                        indexBytes, maxBytes));
+            }
+            long total = indexBytes + (activeFile != null ? Files.size(activeFile) : 0);
+            for (Path segment : segments.values()) {
+                total += Files.size(segment);
+            }
+            while (total > maxBytes && !segments.isEmpty()) {
+                Path oldest = segments.pollFirstEntry().getValue();
+                total -= Files.size(oldest);
+                drop(oldest, "storage above " + maxBytes + " bytes");
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            SegmentedEventLog.forceDirectory(directory);
+        }
+
+        if (dropped > 0 || compressed > 0) {
+            logger.info(String.format("Compacted %s: %d segments compressed, %d dropped, in %d ms", directory,
+                    compressed, dropped, (System.nanoTime() - started) / 1_000_000));
+        }
+    }
+
+    private Path compress(int number, Path plain) throws IOException {
+        long started = System.nanoTime();
+        Path target = SegmentedEventLog.compressedFile(directory, number);
+        FileTime modified = Files.getLastModifiedTime(plain);
+        long size = Files.size(plain);
+        long compressedSize = CompressedSegment.write(plain, target, codec, blockBytes);
+        Files.setLastModifiedTime(target, modified);
+        // The compressed file's name has to be durable before the plain one goes, or a crash
+        // could leave neither
+        SegmentedEventLog.forceDirectory(directory);
+        // Readers that already hold the plain file open keep reading it
+        Files.delete(plain);
+        logger.info(String.format("Compressed %s: %d -> %d bytes (%s) in %d ms", plain.getFileName(), size,
+                compressedSize, codec.name(), (System.nanoTime() - started) / 1_000_000));
+        return target;
+    }
+
+    /**
+     * Bytes of everything in the storage directory other than segments: the id and
+     * secondary indexes, and their checkpoints and lock files.
+     */
+    private long indexBytes() throws IOException {
+        long[] bytes = new long[1];
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && SegmentedEventLog.segmentNumber(file) < 0) {
+                    bytes[0] += attributes.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException) {
+                    // Replaced or deleted by an index write meanwhile
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+        });
+        return bytes[0];
+    }
+
+    private static void drop(Path segment, String reason) throws IOException {
+        Files.deleteIfExists(segment);
+        logger.info("Dropped " + segment.getFileName() + ": " + reason);
+    }
+
+    /**
+     * The plain or compressed file of every segment, by number. Leftovers of an interrupted
+     * pass are cleaned up on the way: scratch files, and plain files whose compressed form
+     * was already complete.
+     */
+    private TreeMap<Integer, Path> listSegments() throws IOException {
+        TreeMap<Integer, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SegmentedEventLog.SEGMENT_PREFIX + "*")) {
+            for (Path file : files) {
+                if (file.getFileName().toString().endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                int number = SegmentedEventLog.segmentNumber(file);
+                if (number < 0) {
+                    continue;
+                }
+                Path other = segments.putIfAbsent(number, file);
+                if (other != null) {
+                    Path plain = file.getFileName().toString().endsWith(SegmentedEventLog.SEGMENT_SUFFIX) ? file : other;
+                    Files.deleteIfExists(plain);
+                    segments.put(number, plain == file ? other : file);
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another store instance in this JVM
+            return null;
+        }
+    }
+}
@@ -0,0 +1,692 @@
+package com.example.service;
+
+import com.example.model.LogEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Append-only event log made of newline-delimited JSON segment files.
+ * <p>
+ * Each {@link #append(List)} call serializes the whole batch up front, writes it
+ * to the active segment with a single write and forces it to disk once, so the
+ * cost of a write depends only on the size of the batch. A new segment is started
+ * when the active one would grow past {@code segmentMaxBytes}.
+ * <p>
+ * Segments are numbered by their file name and a record's {@link Position} never
+ * changes. {@link SegmentCompactor} may replace a sealed segment with a
+ * {@link CompressedSegment} of the same number, which keeps the uncompressed offsets,
+ * or delete it; readers look a segment up when they reach it, read either form, and
+ * skip segments that no longer exist.
+ */
+public class SegmentedEventLog {
+    private static final Logger logger = Logger.getLogger(SegmentedEventLog.class.getName());
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".ndjson";
+    static final String COMPRESSED_SUFFIX = ".ndz";
+
+    private final Path directory;
+    private final long segmentMaxBytes;
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+    // Block indexes of the compressed segments read so far; a compressed segment never changes
+    private final Map<Integer, CompressedSegment> compressedSegments = new ConcurrentHashMap<>();
+
+    // Segments 0 to segmentCount - 1 have been created; the last is the active one
+    private int segmentCount;
+    // The oldest segment not dropped by retention, as of opening or the last refresh
+    private int firstSegment;
+    // The newest segment is only there in compressed form, so the next append starts a new one
+    private boolean activeSealed;
+    private long activeSize;
+    private long bytesWritten;
+
+    public SegmentedEventLog(Path directory, long segmentMaxBytes, ObjectMapper mapper) throws IOException {
+        this.directory = directory;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.writer = mapper.writerFor(LogEntry.class);
+        this.reader = mapper.readerFor(LogEntry.class);
+
+        Files.createDirectories(directory);
+        int[] segments = segmentRange();
+        firstSegment = segments[0];
+        segmentCount = segments[1];
+
+        if (segmentCount > 0) {
+            if (Files.exists(activeSegment())) {
+                activeSize = truncateToLastRecord(activeSegment());
+            } else {
+                try (SegmentFile active = openSegment(segmentCount - 1)) {
+                    activeSize = active != null ? active.size() : 0;
+                }
+                activeSealed = true;
+            }
+        }
+    }
+
+    /**
+     * Appends a batch of entries and fsyncs once for the whole batch.
+     *
+     * @return the position of each appended record, in batch order
+     */
+    public synchronized Position[] append(List<LogEntry> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return new Position[0];
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(batch.size() * 128);
+        long[] offsets = new long[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            offsets[i] = buffer.size();
+            writer.writeValue(buffer, batch.get(i));
+            buffer.write('\n');
+        }
+        byte[] bytes = buffer.toByteArray();
+
+        if (segmentCount == 0 || activeSealed || (activeSize > 0 && activeSize + bytes.length > segmentMaxBytes)) {
+            rollSegment();
+        }
+
+        Position[] positions = new Position[batch.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            positions[i] = new Position(segmentCount - 1, activeSize + offsets[i]);
+        }
+
+        try (FileChannel channel = FileChannel.open(activeSegment(),
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer data = ByteBuffer.wrap(bytes);
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(false);
+        }
+        activeSize += bytes.length;
+        bytesWritten += bytes.length;
+        return positions;
+    }
+
+    /**
+     * Reads every stored entry in append order and hands it to {@code consumer}.
+     * A segment that cannot be read is logged and skipped.
+     */
+    public void forEach(Consumer<LogEntry> consumer) {
+        forEachFrom(Position.START, consumer);
+    }
+
+    /**
+     * Like {@link #forEach(Consumer)}, but starts at a position previously returned
+     * by {@link #end()}.
+     */
+    public void forEachFrom(Position from, Consumer<LogEntry> consumer) {
+        try {
+            scan(from, (position, entry) -> consumer.accept(entry));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to read log segments", e);
+        }
+    }
+
+    /**
+     * Visits every record from {@code from} up to the current end of the log together
+     * with its position. Records that cannot be parsed are logged and skipped.
+     */
+    public void scan(Position from, RecordVisitor visitor) throws IOException {
+        try (Cursor cursor = new Cursor(from)) {
+            while (cursor.next()) {
+                visitor.visit(cursor.position(), cursor.entry());
+            }
+        }
+    }
+
+    /**
+     * Lazily reads the records from {@code from} up to the current end of the log, one at
+     * a time; nothing is read until the stream is consumed, and a short-circuiting
+     * operation such as {@code limit} stops the reading. The stream must be closed.
+     */
+    public Stream<LogEntry> stream(Position from) {
+        return stream(new Cursor(from));
+    }
+
+    /**
+     * Like {@link #stream(Position)} from the start, but as a parallel stream over byte
+     * ranges of about {@code rangeBytes} each, so that every range can be read and parsed
+     * on its own thread. Encounter order is still append order.
+     */
+    public Stream<LogEntry> parallelStream(long rangeBytes) throws IOException {
+        Position end = end();
+
+        List<Position[]> ranges = new ArrayList<>();
+        for (int i = 0; i <= end.segment; i++) {
+            long size = i == end.segment ? end.offset : segmentSize(i);
+            for (long start = 0; start < size; start += rangeBytes) {
+                ranges.add(new Position[]{new Position(i, start), new Position(i, Math.min(size, start + rangeBytes))});
+            }
+        }
+        return ranges.parallelStream()
+                .flatMap(range -> stream(new Cursor(end, range[0], range[1])));
+    }
+
+    private Stream<LogEntry> stream(Cursor cursor) {
+        Spliterator<LogEntry> records = new Spliterators.AbstractSpliterator<LogEntry>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super LogEntry> action) {
+                try {
+                    if (!cursor.next()) {
+                        return false;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                action.accept(cursor.entry());
+                return true;
+            }
+        };
+        return StreamSupport.stream(records, false).onClose(() -> {
+            try {
+                cursor.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Reads the records at the given positions, returned in the same order.
+     * Records that cannot be parsed are logged and left out.
+     */
+    public List<LogEntry> read(List<Position> positions) throws IOException {
+        List<LogEntry> entries = new ArrayList<>(positions.size());
+        SegmentFile file = null;
+        int openSegment = -1;
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+        try {
+            for (Position position : positions) {
+                if (position.segment != openSegment) {
+                    if (file != null) {
+                        file.close();
+                    }
+                    file = openSegment(position.segment);
+                    openSegment = position.segment;
+                }
+                if (file == null) {
+                    // Dropped by retention
+                    continue;
+                }
+
+                buffer.clear();
+                int newline = -1;
+                while (newline < 0) {
+                    if (!buffer.hasRemaining()) {
+                        buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+                    }
+                    int from = buffer.position();
+                    if (file.read(buffer, position.offset + from) <= 0) {
+                        throw new IOException("Truncated record at " + position);
+                    }
+                    for (int i = from; i < buffer.position() && newline < 0; i++) {
+                        if (buffer.get(i) == '\n') {
+                            newline = i;
+                        }
+                    }
+                }
+
+                LogEntry entry = parseRecord(position, buffer.array(), newline);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        } finally {
+            if (file != null) {
+                file.close();
+            }
+        }
+        return entries;
+    }
+
+    private LogEntry parseRecord(Position position, byte[] data, int length) {
+        try {
+            return reader.readValue(data, 0, length);
+        } catch (IOException e) {
+            logger.warning(String.format("Skipping unreadable record in %s at offset %d: %s",
+                    segmentName(position.segment), position.offset, e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Bytes appended through this instance since it was opened.
+     */
+    public synchronized long bytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Catches up with records appended, and segments dropped, by other processes since
+     * this instance was opened or last refreshed. Nothing is changed on disk: a partly
+     * written record at the end of the active segment belongs to a writer that is still
+     * at it, and is left out until it is complete.
+     *
+     * @return whether records were added or dropped; compressing a segment is neither
+     */
+    public synchronized boolean refresh() throws IOException {
+        int[] segments = segmentRange();
+        long size = 0;
+        boolean sealed = false;
+        if (segments[1] > 0) {
+            try (FileChannel channel = FileChannel.open(plainFile(directory, segments[1] - 1), StandardOpenOption.READ)) {
+                size = lastRecordEnd(channel);
+            } catch (NoSuchFileException compressed) {
+                try (SegmentFile active = openSegment(segments[1] - 1)) {
+                    size = active != null ? active.size() : 0;
+                }
+                sealed = true;
+            }
+        }
+
+        boolean changed = segments[0] != firstSegment || segments[1] != segmentCount || size != activeSize;
+        firstSegment = segments[0];
+        segmentCount = segments[1];
+        activeSize = size;
+        activeSealed = sealed;
+        return changed;
+    }
+
+    /**
+     * Position just past the last appended record.
+     */
+    public synchronized Position end() {
+        return segmentCount == 0 ? Position.START : new Position(segmentCount - 1, activeSize);
+    }
+
+    /**
+     * Opens segment {@code segment} in whichever form it is stored, or returns
+     * {@code null} if it has been dropped.
+     */
+    SegmentFile openSegment(int segment) throws IOException {
+        try {
+            return plain(FileChannel.open(plainFile(directory, segment), StandardOpenOption.READ));
+        } catch (NoSuchFileException notPlain) {
+            // Compressed (the compressed file is in place before the plain one is deleted) or dropped
+        }
+
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(compressedFile(directory, segment), StandardOpenOption.READ);
+        } catch (NoSuchFileException dropped) {
+            compressedSegments.remove(segment);
+            return null;
+        }
+        try {
+            CompressedSegment compressed = compressedSegments.get(segment);
+            if (compressed == null) {
+                compressed = CompressedSegment.open(channel);
+                compressedSegments.put(segment, compressed);
+            }
+            return compressed.reader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private long segmentSize(int segment) throws IOException {
+        try (SegmentFile file = openSegment(segment)) {
+            return file != null ? file.size() : 0;
+        }
+    }
+
+    /**
+     * The number of the oldest segment on disk, plain or compressed; 0 if there are none.
+     */
+    int oldestSegment() throws IOException {
+        return segmentRange()[0];
+    }
+
+    /**
+     * The number of the oldest segment on disk and one past the newest; both 0 if there
+     * are none.
+     */
+    private int[] segmentRange() throws IOException {
+        int first = Integer.MAX_VALUE;
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*")) {
+            for (Path file : stream) {
+                int segment = segmentNumber(file);
+                if (segment >= 0) {
+                    first = Math.min(first, segment);
+                    count = Math.max(count, segment + 1);
+                }
+            }
+        }
+        return new int[]{count > 0 ? first : 0, count};
+    }
+
+    private Path activeSegment() {
+        return plainFile(directory, segmentCount - 1);
+    }
+
+    private void rollSegment() throws IOException {
+        Path next = plainFile(directory, segmentCount);
+        Files.createFile(next);
+        segmentCount++;
+        activeSize = 0;
+        activeSealed = false;
+        logger.info("Started new log segment: " + next.getFileName());
+    }
+
+    static Path plainFile(Path directory, int segment) {
+        return directory.resolve(segmentName(segment) + SEGMENT_SUFFIX);
+    }
+
+    static Path compressedFile(Path directory, int segment) {
+        return directory.resolve(segmentName(segment) + COMPRESSED_SUFFIX);
+    }
+
+    private static String segmentName(int segment) {
+        return String.format("%s%08d", SEGMENT_PREFIX, segment + 1);
+    }
+
+    /**
+     * The 0-based number of a plain or compressed segment file, or -1 for any other file.
+     */
+    static int segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        String suffix = name.endsWith(SEGMENT_SUFFIX) ? SEGMENT_SUFFIX
+                : name.endsWith(COMPRESSED_SUFFIX) ? COMPRESSED_SUFFIX : null;
+        if (suffix == null || !name.startsWith(SEGMENT_PREFIX)) {
+            return -1;
+        }
+        String digits = name.substring(SEGMENT_PREFIX.length(), name.length() - suffix.length());
+        if (digits.isEmpty() || !digits.chars().allMatch(Character::isDigit)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(digits) - 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Makes the renames and deletions in {@code directory} durable. Platforms that cannot
+     * open a directory, such as Windows, are left to make them durable on their own.
+     */
+    static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private static SegmentFile plain(FileChannel channel) {
+        return new SegmentFile() {
+            @Override
+            public int read(ByteBuffer target, long offset) throws IOException {
+                return channel.read(target, offset);
+            }
+
+            @Override
+            public long size() throws IOException {
+                return channel.size();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Drops a partially written trailing record left behind by a crash mid-append,
+     * so that the next append starts on a clean line.
+     */
+    private static long truncateToLastRecord(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long validSize = lastRecordEnd(channel);
+            if (validSize < size) {
+                logger.warning(String.format("Truncating %d bytes of incomplete data from %s",
+                        size - validSize, segment.getFileName()));
+                channel.truncate(validSize);
+            }
+            return validSize;
+        }
+    }
+
+    /**
+     * Offset just past the last complete record, that is the last newline.
+     */
+    private static long lastRecordEnd(FileChannel channel) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(8192);
+        long end = channel.size();
+
+        while (end > 0) {
+            long start = Math.max(0, end - chunk.capacity());
+            chunk.clear().limit((int) (end - start));
+            channel.read(chunk, start);
+            for (int i = chunk.position() - 1; i >= 0; i--) {
+                if (chunk.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /**
+     * Reads records one by one, keeping at most one segment open and one line (or one
+     * decompressed block) in memory.
+     * A cursor returns the records that start in {@code [from, to)} and never reads past
+     * the end the log had when it was created. When {@code from} is not the start of a
+     * record (a byte range boundary), the cursor starts at the next record; a record that
+     * starts before {@code to} is read to its end even if that lies past {@code to}.
+     */
+    class Cursor implements Closeable {
+        private final Position end;
+        private final Position to;
+        private final ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+        private byte[] line = new byte[1024];
+        private int lineLength;
+        private boolean skipToNextLine;
+
+        private int segment;
+        private SegmentFile file;
+        private long readPosition;
+        private long readLimit;
+        private long lineStart;
+
+        private Position position;
+        private LogEntry entry;
+
+        Cursor(Position from) {
+            this.end = end();
+            this.to = end;
+            this.segment = from.segment;
+            this.readPosition = from.offset;
+        }
+
+        Cursor(Position end, Position from, Position to) {
+            this.end = end;
+            this.to = to;
+            this.segment = from.segment;
+            // Reading from the byte before tells whether a record starts exactly at from
+            this.readPosition = Math.max(0, from.offset - 1);
+            this.skipToNextLine = from.offset > 0;
+        }
+
+        /**
+         * Moves to the next readable record, returning false once the end is reached.
+         */
+        boolean next() throws IOException {
+            while (segment <= end.segment && segment <= to.segment) {
+                if (file == null) {
+                    file = openSegment(segment);
+                    if (file == null) {
+                        // Dropped by retention; carry on with the next segment
+                        segment++;
+                        readPosition = 0;
+                        skipToNextLine = false;
+                        continue;
+                    }
+                    readLimit = segment == end.segment ? end.offset : Long.MAX_VALUE;
+                    lineStart = readPosition;
+                    lineLength = 0;
+                    chunk.clear().flip();
+                }
+
+                while ((segment < to.segment || lineStart < to.offset) && (chunk.hasRemaining() || fill())) {
+                    byte b = chunk.get();
+                    if (skipToNextLine) {
+                        if (b == '\n') {
+                            skipToNextLine = false;
+                            lineStart = readPosition - chunk.remaining();
+                        }
+                        continue;
+                    }
+                    if (b != '\n') {
+                        if (lineLength == line.length) {
+                            line = Arrays.copyOf(line, line.length * 2);
+                        }
+                        line[lineLength++] = b;
+                        continue;
+                    }
+
+                    Position recordPosition = new Position(segment, lineStart);
+                    LogEntry parsed = parseRecord(recordPosition, line, lineLength);
+                    lineStart += lineLength + 1;
+                    lineLength = 0;
+                    if (parsed != null) {
+                        position = recordPosition;
+                        entry = parsed;
+                        return true;
+                    }
+                }
+
+                // Anything left in the line buffer is a record still being written; skip it
+                file.close();
+                file = null;
+                segment++;
+                readPosition = 0;
+                skipToNextLine = false;
+            }
+            return false;
+        }
+
+        Position position() {
+            return position;
+        }
+
+        LogEntry entry() {
+            return entry;
+        }
+
+        private boolean fill() throws IOException {
+            if (readPosition >= readLimit) {
+                return false;
+            }
+            chunk.clear();
+            if (readLimit - readPosition < chunk.capacity()) {
+                chunk.limit((int) (readLimit - readPosition));
+            }
+            int read = file.read(chunk, readPosition);
+            chunk.flip();
+            if (read <= 0) {
+                return false;
+            }
+            readPosition += read;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (file != null) {
+                file.close();
+                file = null;
+            }
+            segment = end.segment + 1;
+        }
+    }
+
+    /**
+     * The uncompressed bytes of one segment, whether stored plain or compressed.
+     */
+    interface SegmentFile extends Closeable {
+        /**
+         * Reads bytes starting at uncompressed {@code offset} into {@code target}; returns
+         * how many, or -1 past the end.
+         */
+        int read(ByteBuffer target, long offset) throws IOException;
+
+        long size() throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(Position position, LogEntry entry) throws IOException;
+    }
+
+    /**
+     * A point in the log: segment number (0-based) and byte offset within it.
+     */
+    public static class Position {
+        public static final Position START = new Position(0, 0);
+
+        final int segment;
+        final long offset;
+
+        public Position(int segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        public int getSegment() {
+            return segment;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public boolean isBefore(Position other) {
+            return segment < other.segment || (segment == other.segment && offset < other.offset);
+        }
+
+        @Override
+        public String toString() {
+            return "segment " + segment + " offset " + offset;
+        }
+    }
+}
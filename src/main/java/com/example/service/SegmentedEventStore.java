@@ -0,0 +1,184 @@
+package com.example.service;
+
+import com.example.AppConfig.AppConfig;
+import com.example.model.LogEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * NDJSON {@link SegmentedEventLog} together with its id index (for deduplication),
+ * secondary indexes (for type, actor, repo and time queries) and the
+ * {@link SegmentCompactor} that compresses sealed segments and applies retention.
+ */
+class SegmentedEventStore implements EventStore {
+    private static final Logger logger = Logger.getLogger(SegmentedEventStore.class.getName());
+    private static final int READ_BATCH = 1024;
+    private static final long PARALLEL_RANGE_BYTES = 4L * 1024 * 1024;
+
+    private final SegmentedEventLog eventLog;
+    private final EventIdIndex idIndex;
+    private final SecondaryIndex secondaryIndex;
+    private final SegmentCompactor compactor;
+    private boolean idIndexLoaded;
+    private boolean secondaryIndexOpen;
+
+    SegmentedEventStore(Path directory, AppConfig.StorageConfig config, ObjectMapper mapper) throws IOException {
+        BlockCodec codec;
+        try {
+            codec = BlockCodec.named(config.compression);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        if (codec != null && config.compressionBlockBytes <= 0) {
+            throw new IOException("storage.compressionBlockBytes must be positive");
+        }
+        this.eventLog = new SegmentedEventLog(directory, config.segmentMaxBytes, mapper);
+        this.idIndex = new EventIdIndex(directory);
+        this.secondaryIndex = new SecondaryIndex(directory);
+        this.compactor = new SegmentCompactor(directory, eventLog, codec, config.compressionBlockBytes,
+                config.retentionHours > 0 ? Duration.ofHours(config.retentionHours) : null,
+                config.retentionMaxBytes);
+    }
+
+    /**
+     * The id index is only loaded on the first append, so read-only runs never pay for it.
+     */
+    @Override
+    public synchronized List<LogEntry> append(List<LogEntry> logs) throws IOException {
+        if (!idIndexLoaded) {
+            idIndex.load(eventLog);
+            idIndexLoaded = true;
+        }
+        openSecondaryIndex();
+
+        List<LogEntry> fresh = idIndex.filterNew(logs);
+        if (fresh.size() < logs.size()) {
+            logger.fine(String.format("Dropped %d duplicate log entries", logs.size() - fresh.size()));
+        }
+        if (fresh.isEmpty()) {
+            return fresh;
+        }
+
+        SegmentedEventLog.Position[] positions = eventLog.append(fresh);
+        SegmentedEventLog.Position end = eventLog.end();
+        idIndex.record(fresh, end);
+        secondaryIndex.add(fresh, positions, end);
+        return fresh;
+    }
+
+    @Override
+    public long bytesWritten() {
+        return eventLog.bytesWritten();
+    }
+
+    @Override
+    public void forEach(Consumer<LogEntry> consumer) {
+        eventLog.forEach(consumer);
+    }
+
+    /**
+     * Type, actor, repo and time filters are answered from the secondary indexes, so only
+     * the matching records are read; an actor filter shorter than three characters or a
+     * time window spanning most of the log, without another filter, falls back to a full
+     * scan. Candidates are located and read
+     * {@value #READ_BATCH} at a time as the stream is consumed. In parallel, full scans
+     * are split into byte ranges of {@value #PARALLEL_RANGE_BYTES} and candidate
+     * batches are read concurrently.
+     */
+    @Override
+    public Stream<LogEntry> stream(LogQuery query, boolean parallel) throws IOException {
+        if (query.isUnfiltered()) {
+            return scanAll(parallel);
+        }
+
+        int[] candidates;
+        SecondaryIndex.Locations locations;
+        synchronized (this) {
+            openSecondaryIndex();
+            candidates = secondaryIndex.candidates(query);
+            locations = secondaryIndex.locations();
+        }
+        if (candidates == null) {
+            return scanAll(parallel).filter(query::matches);
+        }
+
+        int batches = (candidates.length + READ_BATCH - 1) / READ_BATCH;
+        IntStream batchStarts = IntStream.range(0, batches).map(batch -> batch * READ_BATCH);
+        return (parallel ? batchStarts.parallel() : batchStarts)
+                .mapToObj(from -> readCandidates(locations, candidates, from))
+                .flatMap(List::stream)
+                .filter(query::matches);
+    }
+
+    private Stream<LogEntry> scanAll(boolean parallel) throws IOException {
+        return parallel
+                ? eventLog.parallelStream(PARALLEL_RANGE_BYTES)
+                : eventLog.stream(SegmentedEventLog.Position.START);
+    }
+
+    /**
+     * Not synchronized so batches can be read in parallel: the locations were taken with
+     * the candidates, and segments dropped meanwhile are skipped.
+     */
+    private List<LogEntry> readCandidates(SecondaryIndex.Locations locations, int[] candidates, int from) {
+        int[] batch = Arrays.copyOfRange(candidates, from, Math.min(candidates.length, from + READ_BATCH));
+        try {
+            return eventLog.read(locations.locate(batch));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Not synchronized: compaction only touches sealed segments, which appends never write.
+     */
+    @Override
+    public void compact() throws IOException {
+        compactor.compact();
+    }
+
+    /**
+     * Drops the secondary index entries of segments that retention has deleted, once
+     * there are enough of them; the id index keeps its entries.
+     */
+    @Override
+    public synchronized void pruneIndexes() throws IOException {
+        openSecondaryIndex();
+        secondaryIndex.prune(eventLog.oldestSegment());
+    }
+
+    /**
+     * The indexes catch up with the log the next time they are needed.
+     */
+    @Override
+    public synchronized boolean refresh() throws IOException {
+        if (!eventLog.refresh()) {
+            return false;
+        }
+        idIndexLoaded = false;
+        secondaryIndexOpen = false;
+        return true;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !SegmentedEventLog.Position.START.isBefore(eventLog.end());
+    }
+
+    private void openSecondaryIndex() throws IOException {
+        if (!secondaryIndexOpen) {
+            secondaryIndex.open(eventLog);
+            secondaryIndexOpen = true;
+        }
+    }
+}
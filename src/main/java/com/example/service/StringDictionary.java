@@ -0,0 +1,186 @@
+package com.example.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Append-only dictionary assigning dense int codes to strings, in first-seen order.
+ * The file is a sequence of entries of a 4-byte length followed by the UTF-8 bytes.
+ * New entries are buffered by {@link #intern(String)} and written by {@link #flush()}.
+ * Access is synchronized so readers can take copies while a writer interns.
+ */
+class StringDictionary {
+    private static final Logger logger = Logger.getLogger(StringDictionary.class.getName());
+
+    private final Path file;
+    private final List<String> values = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    // Length of the complete entries in the file, as far as this instance knows
+    private long fileBytes;
+
+    StringDictionary(Path file) throws IOException {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Returns the code of {@code value}, assigning the next free code if it is new.
+     */
+    synchronized int intern(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+
+        int assigned = values.size();
+        values.add(value);
+        codes.put(value, assigned);
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        pending.write(bytes.length >>> 24);
+        pending.write(bytes.length >>> 16);
+        pending.write(bytes.length >>> 8);
+        pending.write(bytes.length);
+        pending.write(bytes, 0, bytes.length);
+        return assigned;
+    }
+
+    /**
+     * Code of {@code value}, or -1 if it is not in the dictionary.
+     */
+    synchronized int codeOf(String value) {
+        Integer code = codes.get(value);
+        return code != null ? code : -1;
+    }
+
+    /**
+     * Copy of the values indexed by code, for lock-free decoding.
+     */
+    synchronized String[] values() {
+        return values.toArray(new String[0]);
+    }
+
+    synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * Evaluates {@code predicate} once per distinct value, so a scan can test codes
+     * with an array lookup instead of comparing strings row by row.
+     */
+    synchronized boolean[] matching(Predicate<String> predicate) {
+        boolean[] matches = new boolean[values.size()];
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = predicate.test(values.get(i));
+        }
+        return matches;
+    }
+
+    /**
+     * Writes and fsyncs the entries added since the last flush. If that fails, the file is
+     * cut back to where it was, so the entries are written again, whole, by the next flush.
+     *
+     * @return bytes written
+     */
+    synchronized int flush() throws IOException {
+        if (pending.size() == 0) {
+            return 0;
+        }
+        long size;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            size = channel.size();
+            ByteBuffer data = ByteBuffer.wrap(pending.toByteArray());
+            try {
+                while (data.hasRemaining()) {
+                    channel.write(data, size + data.position());
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                try {
+                    channel.truncate(size);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+        int written = pending.size();
+        fileBytes = size + written;
+        pending.reset();
+        return written;
+    }
+
+    /**
+     * Adds the entries another process has flushed since this instance loaded the file or
+     * last refreshed. An entry still being written is left for the next refresh, and the
+     * file is not changed.
+     */
+    synchronized void refresh() throws IOException {
+        if (pending.size() > 0 || !Files.exists(file)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= fileBytes) {
+                return;
+            }
+            ByteBuffer data = ByteBuffer.allocate(Math.toIntExact(size - fileBytes));
+            while (data.hasRemaining() && channel.read(data, fileBytes + data.position()) > 0) {
+                // Read until full, or until the end if the file shrank meanwhile
+            }
+            data.flip();
+            readEntries(data);
+            fileBytes += data.position();
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        readEntries(data);
+        fileBytes = data.position();
+
+        if (data.hasRemaining()) {
+            logger.warning(String.format("Truncating %d bytes of incomplete data from %s",
+                    data.remaining(), file.getFileName()));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(data.position());
+            }
+        }
+    }
+
+    /**
+     * Adds the complete entries from the position of {@code data} on, leaving it at the
+     * first byte not consumed.
+     */
+    private void readEntries(ByteBuffer data) {
+        while (data.remaining() >= Integer.BYTES) {
+            int length = data.getInt(data.position());
+            if (length < 0 || length > data.remaining() - Integer.BYTES) {
+                break;
+            }
+            data.position(data.position() + Integer.BYTES);
+            String value = new String(data.array(), data.arrayOffset() + data.position(), length, StandardCharsets.UTF_8);
+            data.position(data.position() + length);
+            codes.put(value, values.size());
+            values.add(value);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Per-block summaries of a store's rows, in blocks of {@value #BLOCK_ROWS} rows in stored
+ * order: the smallest and largest {@code created_at} and numeric id of each block. A query
+ * with a time window skips every block whose time range lies outside it, and takes every
+ * row of a block that lies wholly inside it without looking at the rows. Deduplication
+ * looks a numeric id up only in the blocks whose id range holds it; as event ids grow
+ * over time, a new event's id usually lies above every range.
+ * <p>
+ * Kept in one file of {@value #BLOCK_BYTES} bytes per block (min time, max time, min id,
+ * max id). Rows are only ever appended, so a write rewrites the blocks from the first one
+ * changed since the previous write. The summaries are conservative: rows re-added after an
+ * interrupted write can only widen a block's ranges, never narrow them, and a block the
+ * file does not cover is treated as spanning everything.
+ */
+class ZoneMap {
+    static final int BLOCK_ROWS = 4096;
+    private static final int BLOCK_BYTES = 4 * Long.BYTES;
+
+    private final Path file;
+    private long[] minTime = new long[16];
+    private long[] maxTime = new long[16];
+    private long[] minId = new long[16];
+    private long[] maxId = new long[16];
+    private long rows;
+    private int firstChanged;
+
+    ZoneMap(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the summaries of the first {@code rows} rows; rows added from here on are
+     * numbered from {@code rows}.
+     */
+    synchronized void load(long rows) throws IOException {
+        int blocks = blockOf(rows + BLOCK_ROWS - 1);
+        ensureCapacity(blocks);
+        ByteBuffer data = ByteBuffer.allocate(0);
+        if (Files.exists(file)) {
+            data = ByteBuffer.wrap(Files.readAllBytes(file));
+        }
+        int covered = 0;
+        for (int block = 0; block < blocks; block++) {
+            if ((block + 1) * BLOCK_BYTES <= data.limit()) {
+                covered++;
+                minTime[block] = data.getLong(block * BLOCK_BYTES);
+                maxTime[block] = data.getLong(block * BLOCK_BYTES + 8);
+                minId[block] = data.getLong(block * BLOCK_BYTES + 16);
+                maxId[block] = data.getLong(block * BLOCK_BYTES + 24);
+            } else {
+                minTime[block] = LogQuery.NO_TIME;
+                maxTime[block] = Long.MAX_VALUE;
+                minId[block] = 0;
+                maxId[block] = Long.MAX_VALUE;
+            }
+        }
+        this.rows = rows;
+        // Blocks the file does not cover are written as spanning everything, not left as a hole of zeros
+        this.firstChanged = covered;
+    }
+
+    /**
+     * Adds the next row: its {@link LogQuery#createdAtMillis} and numeric id (negative if none).
+     */
+    synchronized void add(long createdAt, long id) {
+        int block = blockOf(rows);
+        if (rows % BLOCK_ROWS == 0) {
+            ensureCapacity(block + 1);
+            minTime[block] = Long.MAX_VALUE;
+            maxTime[block] = LogQuery.NO_TIME;
+            minId[block] = Long.MAX_VALUE;
+            maxId[block] = -1;
+        }
+        // NO_TIME is the smallest long: a row without a time keeps the block from being "wholly inside"
+        minTime[block] = Math.min(minTime[block], createdAt);
+        maxTime[block] = Math.max(maxTime[block], createdAt);
+        if (id >= 0) {
+            minId[block] = Math.min(minId[block], id);
+            maxId[block] = Math.max(maxId[block], id);
+        }
+        firstChanged = Math.min(firstChanged, block);
+        rows++;
+    }
+
+    /**
+     * Writes the blocks changed since the last write and forces them to disk.
+     */
+    synchronized void write() throws IOException {
+        int blocks = blockOf(rows + BLOCK_ROWS - 1);
+        if (firstChanged >= blocks) {
+            return;
+        }
+        ByteBuffer data = ByteBuffer.allocate((blocks - firstChanged) * BLOCK_BYTES);
+        for (int block = firstChanged; block < blocks; block++) {
+            data.putLong(minTime[block]).putLong(maxTime[block]).putLong(minId[block]).putLong(maxId[block]);
+        }
+        data.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long at = (long) firstChanged * BLOCK_BYTES;
+            while (data.hasRemaining()) {
+                at += channel.write(data, at);
+            }
+            channel.force(false);
+        }
+        firstChanged = blocks;
+    }
+
+    /**
+     * Writes the blocks from {@code firstBlock} on to a new {@code target}, as the blocks
+     * of a zone map whose rows start with that block's first row, and forces it to disk.
+     */
+    synchronized void writeTo(Path target, int firstBlock) throws IOException {
+        int blocks = blockOf(rows + BLOCK_ROWS - 1);
+        ByteBuffer data = ByteBuffer.allocate(Math.max(0, blocks - firstBlock) * BLOCK_BYTES);
+        for (int block = firstBlock; block < blocks; block++) {
+            data.putLong(minTime[block]).putLong(maxTime[block]).putLong(minId[block]).putLong(maxId[block]);
+        }
+        data.flip();
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(false);
+        }
+    }
+
+    synchronized long rows() {
+        return rows;
+    }
+
+    /**
+     * Whether any row of {@code block} may fall in the query's time window.
+     */
+    synchronized boolean overlaps(int block, LogQuery query) {
+        return maxTime[block] >= query.getSinceMillis() && minTime[block] < query.getUntilMillis();
+    }
+
+    /**
+     * Whether every row of {@code block} falls in the query's time window.
+     */
+    synchronized boolean within(int block, LogQuery query) {
+        return minTime[block] != LogQuery.NO_TIME && minTime[block] >= query.getSinceMillis()
+                && maxTime[block] < query.getUntilMillis();
+    }
+
+    /**
+     * The number of blocks holding rows, the last one possibly partly filled.
+     */
+    synchronized int blocks() {
+        return blockOf(rows + BLOCK_ROWS - 1);
+    }
+
+    /**
+     * Whether {@code block} has a recorded id range; blocks that predate the zone map
+     * span every id.
+     */
+    synchronized boolean hasIdRange(int block) {
+        return minId[block] != 0 || maxId[block] != Long.MAX_VALUE;
+    }
+
+    /**
+     * Whether a row of {@code block} may have the numeric id {@code id}.
+     */
+    synchronized boolean mayContainId(int block, long id) {
+        return minId[block] <= id && id <= maxId[block];
+    }
+
+    static int blockOf(long row) {
+        return Math.toIntExact(row / BLOCK_ROWS);
+    }
+
+    private void ensureCapacity(int blocks) {
+        if (blocks > minTime.length) {
+            int capacity = Math.max(blocks, minTime.length * 2);
+            minTime = Arrays.copyOf(minTime, capacity);
+            maxTime = Arrays.copyOf(maxTime, capacity);
+            minId = Arrays.copyOf(minId, capacity);
+            maxId = Arrays.copyOf(maxId, capacity);
+        }
+    }
+}
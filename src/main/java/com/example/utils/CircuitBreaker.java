@@ -0,0 +1,86 @@
+package com.example.utils;
+
+import java.util.logging.Logger;
+
+/**
+ * Fails calls fast while an upstream looks down.
+ * <p>
+ * After {@code failureThreshold} consecutive failures the breaker opens and refuses
+ * every call for {@code openDurationMs}. It then lets a single trial call through
+ * (half-open): success closes it again, failure re-opens it for another period.
+ * Thread-safe.
+ */
+public class CircuitBreaker {
+    private static final Logger logger = Logger.getLogger(CircuitBreaker.class.getName());
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openDurationMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int failureThreshold, long openDurationMs) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+    }
+
+    /**
+     * Returns whether a call may go ahead now; every permitted call must be followed by
+     * {@link #onSuccess()}, {@link #onFailure()} or {@link #onIgnored()}.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("Circuit closed; upstream is responding again");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            logger.warning(String.format("Circuit opened after %d consecutive failures; failing fast for %d ms",
+                    consecutiveFailures, openDurationMs));
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            trialInFlight = false;
+        }
+    }
+
+    /**
+     * Ends a permitted call whose outcome says nothing about the upstream's health, such
+     * as a request it rejected as invalid: the state and failure count stay as they were,
+     * and a half-open breaker lets another trial call through.
+     */
+    public synchronized void onIgnored() {
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.utils;
+
+/**
+ * Open-addressing hash set of primitive longs with linear probing.
+ * <p>
+ * Avoids the boxed {@code Long} and node object that a {@code HashSet<Long>} keeps per
+ * element, so large id sets cost about 16 bytes per element at the default load factor.
+ * Not thread-safe.
+ */
+public class LongHashSet {
+    private static final long EMPTY = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] slots;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    private boolean containsEmptyKey;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsEmptyKey) {
+                return false;
+            }
+            containsEmptyKey = true;
+            size++;
+            return true;
+        }
+
+        int index = indexOf(value);
+        while (slots[index] != EMPTY) {
+            if (slots[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        slots[index] = value;
+        if (++size >= resizeAt) {
+            rehash(slots.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmptyKey;
+        }
+
+        int index = indexOf(value);
+        while (slots[index] != EMPTY) {
+            if (slots[index] == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int indexOf(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] old = slots;
+        allocate(newCapacity);
+        for (long value : old) {
+            if (value != EMPTY) {
+                int index = indexOf(value);
+                while (slots[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                slots[index] = value;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        slots = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR);
+        if (needed > (1 << 30)) {
+            throw new IllegalArgumentException("Too many elements: " + expectedSize);
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+}
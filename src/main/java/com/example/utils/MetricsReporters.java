@@ -0,0 +1,67 @@
+package com.example.utils;
+
+import com.codahale.metrics.CsvReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jmx.JmxReporter;
+import com.example.AppConfig.AppConfig;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The long-running reporters enabled in {@code metrics}: JMX, so a live run can be
+ * watched with JConsole or VisualVM, and periodic CSV files for runs that need to be
+ * looked at afterwards. Closing stops them, writing a last CSV row first so short runs
+ * are recorded too.
+ */
+public class MetricsReporters implements Closeable {
+    private static final Logger logger = Logger.getLogger(MetricsReporters.class.getName());
+
+    private final JmxReporter jmxReporter;
+    private final CsvReporter csvReporter;
+
+    private MetricsReporters(JmxReporter jmxReporter, CsvReporter csvReporter) {
+        this.jmxReporter = jmxReporter;
+        this.csvReporter = csvReporter;
+    }
+
+    public static MetricsReporters start(MetricRegistry registry, AppConfig.MetricsConfig config) throws IOException {
+        JmxReporter jmx = null;
+        if (config.jmx) {
+            jmx = JmxReporter.forRegistry(registry)
+                    .inDomain("log-parser")
+                    .convertRatesTo(TimeUnit.SECONDS)
+                    .convertDurationsTo(TimeUnit.MILLISECONDS)
+                    .build();
+            jmx.start();
+        }
+
+        CsvReporter csv = null;
+        if (config.csvDirectory != null && !config.csvDirectory.isEmpty()) {
+            File directory = new File(config.csvDirectory);
+            Files.createDirectories(directory.toPath());
+            csv = CsvReporter.forRegistry(registry)
+                    .convertRatesTo(TimeUnit.SECONDS)
+                    .convertDurationsTo(TimeUnit.MILLISECONDS)
+                    .build(directory);
+            csv.start(Math.max(1, config.csvPeriodSeconds), TimeUnit.SECONDS);
+            logger.info("Writing metrics to " + directory.getAbsolutePath());
+        }
+        return new MetricsReporters(jmx, csv);
+    }
+
+    @Override
+    public void close() {
+        if (csvReporter != null) {
+            csvReporter.report();
+            csvReporter.close();
+        }
+        if (jmxReporter != null) {
+            jmxReporter.close();
+        }
+    }
+}
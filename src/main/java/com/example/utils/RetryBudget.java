@@ -0,0 +1,35 @@
+package com.example.utils;
+
+/**
+ * Caps the number of retries, across all operations sharing it, within a fixed time
+ * window. Stops a burst of failing operations from multiplying the load on an upstream
+ * that is already struggling; first attempts are never limited. Thread-safe.
+ */
+public class RetryBudget {
+    private final int maxRetries;
+    private final long windowMs;
+
+    private long windowStart;
+    private int used;
+
+    public RetryBudget(int maxRetries, long windowMs) {
+        this.maxRetries = maxRetries;
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * Takes one retry from the current window, returning false if none are left.
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= windowMs) {
+            windowStart = now;
+            used = 0;
+        }
+        if (used >= maxRetries) {
+            return false;
+        }
+        used++;
+        return true;
+    }
+}
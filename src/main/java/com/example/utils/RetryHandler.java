@@ -1,49 +1,286 @@
 package com.example.utils;
 
-import com.example.AppConfig.AppConfig;
-import com.example.AppConfig.ConfigLoader;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.logging.Logger;
 
+/**
+ * Retries failed operations with jittered exponential backoff, without holding a thread
+ * while it waits.
+ * <p>
+ * Each attempt's outcome is a {@link CompletableFuture}; after a retryable failure the
+ * next attempt is scheduled on a {@link ScheduledExecutorService} instead of sleeping.
+ * Only failures accepted by the {@code retryable} classifier are retried, and every
+ * retry draws on a shared {@link RetryBudget}. A {@link CircuitBreaker} counts retryable
+ * failures and, once open, makes new attempts fail fast with {@link CircuitOpenException}
+ * until the upstream recovers.
+ */
 public class RetryHandler {
+    private static final Logger logger = Logger.getLogger(RetryHandler.class.getName());
 
-    private final int maxRetries;
+    public enum Jitter {
+        /** Plain exponential backoff: {@code base * 2^(attempt-1)}, capped. */
+        NONE,
+        /** Uniformly random between 0 and the capped exponential delay. */
+        FULL,
+        /** Uniformly random between the base delay and three times the previous delay, capped. */
+        DECORRELATED;
+
+        long delay(long baseMs, long maxMs, int attempt, long previousMs) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long exponential = Math.min(maxMs, baseMs << Math.min(attempt - 1, 30));
+            switch (this) {
+                case FULL:
+                    return random.nextLong(exponential + 1);
+                case DECORRELATED:
+                    return Math.min(maxMs, baseMs + random.nextLong(Math.max(1, previousMs * 3 - baseMs + 1)));
+                default:
+                    return exponential;
+            }
+        }
+    }
+
+    private final int maxAttempts;
     private final long baseDelayMs;
-    AppConfig config = ConfigLoader.loadConfig("src/config.yaml");
+    private final long maxDelayMs;
+    private final Jitter jitter;
+    private final Predicate<Throwable> retryable;
+    private final RetryBudget budget;
+    private final CircuitBreaker circuitBreaker;
+    private final ScheduledExecutorService scheduler;
+    private final Counter retries;
+    private final Counter exhausted;
+    private final Counter budgetExhausted;
+    private final Counter circuitOpen;
+    private final Counter nonRetryable;
 
-    public RetryHandler(int maxRetries, long baseDelayMs) throws IOException {
-        this.maxRetries = maxRetries;
+    /**
+     * @param maxRetries     attempts in total, the first one included
+     * @param retryable      decides from the (unwrapped) failure whether another attempt can help
+     * @param budget         retries allowed across every operation sharing it
+     * @param circuitBreaker shared by every operation against the same upstream
+     * @param scheduler      runs the delayed attempts
+     * @param metrics        registry for the {@code retries} scheduled and the operations given up
+     *                       on: {@code exhausted}, {@code budget-exhausted}, {@code circuit-open}
+     *                       and {@code non-retryable}
+     */
+    public RetryHandler(int maxRetries, long baseDelayMs, long maxDelayMs, Jitter jitter,
+                        Predicate<Throwable> retryable, RetryBudget budget, CircuitBreaker circuitBreaker,
+                        ScheduledExecutorService scheduler, MetricRegistry metrics) {
+        this.maxAttempts = Math.max(1, maxRetries);
         this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.jitter = jitter;
+        this.retryable = retryable;
+        this.budget = budget;
+        this.circuitBreaker = circuitBreaker;
+        this.scheduler = scheduler;
+        this.retries = metrics.counter(MetricRegistry.name(RetryHandler.class, "retries"));
+        this.exhausted = metrics.counter(MetricRegistry.name(RetryHandler.class, "exhausted"));
+        this.budgetExhausted = metrics.counter(MetricRegistry.name(RetryHandler.class, "budget-exhausted"));
+        this.circuitOpen = metrics.counter(MetricRegistry.name(RetryHandler.class, "circuit-open"));
+        this.nonRetryable = metrics.counter(MetricRegistry.name(RetryHandler.class, "non-retryable"));
     }
 
     /**
-     * Retry a supplier operation (e.g., a lambda that returns a value) with exponential backoff.
-     *
-     * @param operation The operation to execute
-     * @param <T>       The type of the return value
-     * @return          The result of the operation
-     * @throws Exception if all retries fail
+     * Retries an asynchronous operation; {@code operation} is called once per attempt and
+     * should return quickly. The returned future fails with the last failure if it is not
+     * retryable, with {@link CircuitOpenException} while the circuit is open, and with an
+     * {@link IOException} wrapping the last failure once attempts or budget run out.
      */
-    public <T> T executeWithRetry(Supplier<T> operation) throws Exception {
-        int attempt = 0;
-        Exception lastException = null;
+    public <T> CompletableFuture<T> executeAsync(Supplier<? extends CompletionStage<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(operation, result, 1, baseDelayMs);
+        return result;
+    }
 
-        while (attempt < maxRetries) {
+    /**
+     * Retries a blocking operation, running each attempt on {@code executor}.
+     */
+    public <T> CompletableFuture<T> executeAsync(Callable<T> operation, Executor executor) {
+        return executeAsync(() -> CompletableFuture.supplyAsync(() -> {
             try {
-                return operation.get();
-            } catch (Exception ex) {
-                lastException = ex;
-                attempt++;
+                return operation.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor));
+    }
+
+    /**
+     * Blocking form for callers that need the result on their own thread. Attempts run on
+     * the calling thread; between them the thread waits for the scheduled retry rather
+     * than sleeping a fixed time, so an open circuit or exhausted budget ends the wait.
+     */
+    public <T> T executeWithRetry(Callable<T> operation) throws Exception {
+        LinkedBlockingQueue<Runnable> callerTasks = new LinkedBlockingQueue<>();
+        CompletableFuture<T> result = executeAsync(operation, callerTasks::add);
+        result.whenComplete((value, error) -> callerTasks.add(() -> { }));
+
+        while (!result.isDone()) {
+            callerTasks.take().run();
+        }
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private <T> void attempt(Supplier<? extends CompletionStage<T>> operation, CompletableFuture<T> result,
+                             int attempt, long previousDelayMs) {
+        if (result.isDone()) {
+            return;
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            circuitOpen.inc();
+            result.completeExceptionally(new CircuitOpenException("Circuit open; not attempting the call"));
+            return;
+        }
+
+        CompletionStage<T> stage;
+        try {
+            stage = operation.get();
+        } catch (Throwable t) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(t);
+            stage = failed;
+        }
+
+        stage.whenComplete((value, error) -> {
+            if (error == null) {
+                circuitBreaker.onSuccess();
+                result.complete(value);
+                return;
+            }
+
+            Throwable failure = unwrap(error);
+            if (!retryable.test(failure)) {
+                // A request that can never succeed says nothing about the upstream's health either way
+                circuitBreaker.onIgnored();
+                nonRetryable.inc();
+                result.completeExceptionally(failure);
+                return;
+            }
+
+            circuitBreaker.onFailure();
+            if (attempt >= maxAttempts) {
+                exhausted.inc();
+                result.completeExceptionally(new IOException("Operation failed after " + attempt + " attempts", failure));
+                return;
+            }
+            if (!budget.tryAcquire()) {
+                budgetExhausted.inc();
+                result.completeExceptionally(new IOException("Retry budget exhausted after " + attempt + " attempts", failure));
+                return;
+            }
 
-                if (attempt >= maxRetries) break;
+            long delay = jitter.delay(baseDelayMs, maxDelayMs, attempt, previousDelayMs);
+            logger.warning(String.format("Attempt %d failed (%s). Retrying in %d ms...", attempt, failure, delay));
+            retries.inc();
+            scheduler.schedule(() -> attempt(operation, result, attempt + 1, delay), delay, TimeUnit.MILLISECONDS);
+        });
+    }
 
-                long delay = (long) (baseDelayMs * Math.pow(2, attempt - 1));
-                System.err.printf("Attempt %d failed. Retrying in %d ms...%n", attempt, delay);
-                Thread.sleep(delay);
+    /**
+     * Default classification: I/O failures and timeouts are worth retrying, unless marked
+     * with {@link NonRetryableException} or caused by an interrupt; anything else
+     * (programming errors, protocol violations) is not.
+     */
+    public static boolean isRetryable(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof NonRetryableException || t instanceof CircuitOpenException
+                    || t instanceof InterruptedIOException || t instanceof InterruptedException) {
+                return false;
             }
         }
+        return failure instanceof IOException || failure instanceof UncheckedIOException
+                || failure instanceof TimeoutException;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable t = error;
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    /**
+     * Single daemon thread that only fires delayed attempts; shared by every handler that
+     * is not given a scheduler of its own.
+     */
+    public static ScheduledExecutorService sharedScheduler() {
+        return SchedulerHolder.SCHEDULER;
+    }
+
+    private static class SchedulerHolder {
+        static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "retry-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * A failure that retrying cannot fix, such as a client error from the server.
+     */
+    public static class NonRetryableException extends IOException {
+        private final int status;
+
+        public NonRetryableException(String message) {
+            this(message, -1);
+        }
+
+        /**
+         * @param status the HTTP status the server answered with
+         */
+        public NonRetryableException(String message, int status) {
+            super(message);
+            this.status = status;
+        }
 
-        throw new Exception("Operation failed after " + maxRetries + " attempts", lastException);
+        public NonRetryableException(String message, Throwable cause) {
+            super(message, cause);
+            this.status = -1;
+        }
+
+        /**
+         * The HTTP status behind the failure, or -1 if it did not come from a response.
+         */
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    /**
+     * Thrown without attempting the call while the circuit breaker is open.
+     */
+    public static class CircuitOpenException extends IOException {
+        public CircuitOpenException(String message) {
+            super(message);
+        }
     }
 }
@@ -0,0 +1,167 @@
+package com.example.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy-hitters sketch: approximate top-K counts over a stream of strings
+ * in memory bounded by {@code capacity} counters.
+ * <p>
+ * When a new string arrives and all counters are taken, the smallest counter is handed
+ * to it and keeps its count, which is recorded as the possible overcount ({@link Counter#getError()}).
+ * Any string occurring more than {@code total / capacity} times is guaranteed to be
+ * tracked. The counters sit in a min-heap so that finding and updating the smallest one
+ * is logarithmic. Counters with equal counts are ordered by string, so the evicted counter
+ * and the order of {@link #top(int)} do not depend on arrival or hash order. Not thread-safe.
+ */
+public class SpaceSaving {
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final Counter[] heap;
+    private int size;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    public void add(String value) {
+        add(value, 1, 0);
+    }
+
+    /**
+     * Folds another sketch into this one. The result keeps the guarantees of a sketch of
+     * this capacity over both streams.
+     */
+    public void merge(SpaceSaving other) {
+        for (int i = 0; i < other.size; i++) {
+            Counter counter = other.heap[i];
+            add(counter.value, counter.count, counter.error);
+        }
+    }
+
+    /**
+     * The {@code k} largest counters, largest first; equal counts in string order.
+     */
+    public List<Counter> top(int k) {
+        Counter[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, Comparator.comparingLong(Counter::getCount).reversed()
+                .thenComparing(Counter::getValue));
+        return new ArrayList<>(Arrays.asList(sorted).subList(0, Math.min(k, sorted.length)));
+    }
+
+    private void add(String value, long count, long error) {
+        Counter counter = counters.get(value);
+        if (counter != null) {
+            counter.count += count;
+            counter.error += error;
+            siftDown(counter.heapIndex);
+            return;
+        }
+
+        if (size < capacity) {
+            counter = new Counter(value, count, error);
+            counter.heapIndex = size;
+            heap[size++] = counter;
+            counters.put(value, counter);
+            siftUp(counter.heapIndex);
+            return;
+        }
+
+        // Evict the smallest counter; the newcomer inherits its count as possible overcount
+        Counter smallest = heap[0];
+        counters.remove(smallest.value);
+        smallest.error = smallest.count + error;
+        smallest.count += count;
+        smallest.value = value;
+        counters.put(value, smallest);
+        siftDown(0);
+    }
+
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!smaller(counter, heap[parent])) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && smaller(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!smaller(heap[child], counter)) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    /**
+     * Heap order: the smaller count first and, between equal counts, the string that sorts
+     * last, which is the one {@link #top(int)} would list last.
+     */
+    private static boolean smaller(Counter a, Counter b) {
+        if (a.count != b.count) {
+            return a.count < b.count;
+        }
+        return a.value.compareTo(b.value) > 0;
+    }
+
+    private void place(Counter counter, int index) {
+        heap[index] = counter;
+        counter.heapIndex = index;
+    }
+
+    public static class Counter {
+        private String value;
+        private long count;
+        private long error;
+        private int heapIndex;
+
+        Counter(String value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Upper bound of the true count.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * How much of {@link #getCount()} may belong to strings evicted earlier.
+         */
+        public long getError() {
+            return error;
+        }
+    }
+}
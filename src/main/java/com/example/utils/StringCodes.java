@@ -0,0 +1,96 @@
+package com.example.utils;
+
+import java.util.Arrays;
+
+/**
+ * Assigns dense int codes (0, 1, 2, ...) to strings in first-seen order, using an
+ * open-addressing table with linear probing.
+ * <p>
+ * Lets per-string counters live in plain {@code long[]} arrays indexed by code instead
+ * of a {@code Map<String, Integer>} with a boxed value and node object per key.
+ * Not thread-safe.
+ */
+public class StringCodes {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private String[] keys;
+    private int[] codes;
+    private int mask;
+    private int resizeAt;
+    private String[] values = new String[16];
+    private int size;
+
+    public StringCodes() {
+        allocate(32);
+    }
+
+    /**
+     * Returns the code of {@code value}, assigning the next free code if it is new.
+     */
+    public int intern(String value) {
+        int index = slot(value);
+        while (keys[index] != null) {
+            if (keys[index].equals(value)) {
+                return codes[index];
+            }
+            index = (index + 1) & mask;
+        }
+
+        int code = size++;
+        keys[index] = value;
+        codes[index] = code;
+        if (code == values.length) {
+            values = Arrays.copyOf(values, values.length << 1);
+        }
+        values[code] = value;
+        if (size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return code;
+    }
+
+    public String valueOf(int code) {
+        return values[code];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int newCapacity) {
+        allocate(newCapacity);
+        for (int code = 0; code < size; code++) {
+            int index = slot(values[code]);
+            while (keys[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = values[code];
+            codes[index] = code;
+        }
+    }
+
+    /**
+     * Home slot of {@code value}: its hash through the murmur3 finalizer, so that strings
+     * whose hashes differ only in the high bits (or by small steps, as ids and similar
+     * names do) still spread over the low bits the mask keeps.
+     */
+    private int slot(String value) {
+        int h = value.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    private void allocate(int capacity) {
+        if (capacity > (1 << 30)) {
+            throw new IllegalStateException("Too many strings: " + size);
+        }
+        keys = new String[capacity];
+        codes = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for tasks that spend most of their time blocked on I/O.
+ * <p>
+ * On a Java 21+ runtime these run one virtual thread per task, so a blocked task costs
+ * almost nothing; a semaphore still bounds how many run at once, so that a long list of
+ * tasks does not turn into as many simultaneous connections. The build targets Java 11,
+ * so the virtual-thread API is looked up reflectively, once; on older runtimes a fixed
+ * pool of daemon platform threads of the same size is used instead.
+ */
+public final class ThreadPools {
+    private static final ThreadFactory VIRTUAL_THREADS = virtualThreadFactory();
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = VIRTUAL_THREADS != null
+            ? threadPerTaskExecutorMethod() : null;
+
+    private ThreadPools() {
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        return NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @param namePrefix    thread name prefix, numbered per thread
+     * @param maxConcurrent tasks that may run at once, on either kind of thread
+     */
+    public static ExecutorService newIoExecutor(String namePrefix, int maxConcurrent) {
+        AtomicInteger counter = new AtomicInteger();
+        if (NEW_THREAD_PER_TASK_EXECUTOR != null) {
+            ThreadFactory named = runnable -> {
+                Thread thread = VIRTUAL_THREADS.newThread(runnable);
+                thread.setName(namePrefix + "-" + counter.incrementAndGet());
+                return thread;
+            };
+            return new BoundedExecutor(threadPerTaskExecutor(named), Math.max(1, maxConcurrent));
+        }
+
+        return Executors.newFixedThreadPool(Math.max(1, maxConcurrent), runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static ExecutorService threadPerTaskExecutor(ThreadFactory threads) {
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threads);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Before Java 21, or a preview-only runtime
+            return null;
+        }
+    }
+
+    private static Method threadPerTaskExecutorMethod() {
+        try {
+            return Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs each task on a thread of its own from {@code delegate}, but at most
+     * {@code permits} at a time: the others wait for a permit on their (virtual) thread.
+     */
+    private static class BoundedExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        BoundedExecutor(ExecutorService delegate, int permits) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(permits, true);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            delegate.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    // Shut down while waiting; a submitted task must still complete its future
+                    if (task instanceof Future) {
+                        ((Future<?>) task).cancel(false);
+                    }
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
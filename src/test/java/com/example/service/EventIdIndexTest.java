@@ -0,0 +1,172 @@
+package com.example.service;
+
+import com.example.AppConfig.AppConfig;
+import com.example.model.LogEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.example.service.SegmentedEventLogTest.entries;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventIdIndexTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void onlyCanonicalDecimalIdsAreNumeric() {
+        assertEquals(0, EventIdIndex.numericId("0"));
+        assertEquals(38_149_522_011L, EventIdIndex.numericId("38149522011"));
+        assertEquals(999_999_999_999_999_999L, EventIdIndex.numericId("999999999999999999"));
+        assertEquals(-1, EventIdIndex.numericId("0123"));
+        assertEquals(-1, EventIdIndex.numericId("1000000000000000000"));
+        assertEquals(-1, EventIdIndex.numericId("12a"));
+        assertEquals(-1, EventIdIndex.numericId("-5"));
+        assertEquals(-1, EventIdIndex.numericId(""));
+        assertEquals(-1, EventIdIndex.numericId(null));
+    }
+
+    @Test
+    void textIdsSurviveARestartApartFromTheirNumericLookalikes() throws IOException {
+        SegmentedEventLog log = new SegmentedEventLog(directory, 1 << 20, MAPPER);
+        List<LogEntry> batch = List.of(entry("123"), entry("0123"), entry("evt-é"), entry("1000000000000000000"));
+        EventIdIndex index = new EventIdIndex(directory);
+        index.load(log);
+        log.append(batch);
+        index.record(batch, log.end());
+
+        EventIdIndex reloaded = new EventIdIndex(directory);
+        reloaded.load(log);
+        assertEquals(4, reloaded.size());
+        for (LogEntry entry : batch) {
+            assertTrue(reloaded.contains(entry.getId()), entry.getId());
+        }
+        assertFalse(reloaded.contains("124"));
+        assertFalse(reloaded.contains("00123"));
+        assertEquals(List.of("0123", "evt-é", "1000000000000000000"),
+                Files.readAllLines(directory.resolve("ids.txt"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void filterNewDropsStoredIdsAndRepeatsWithinTheBatch() throws IOException {
+        SegmentedEventLog log = new SegmentedEventLog(directory, 1 << 20, MAPPER);
+        EventIdIndex index = new EventIdIndex(directory);
+        index.load(log);
+        List<LogEntry> stored = List.of(entry("1"), entry("a"));
+        log.append(stored);
+        index.record(stored, log.end());
+
+        List<LogEntry> fresh = index.filterNew(List.of(entry("1"), entry("2"), entry("2"), entry("a"), entry("b"),
+                entry("b"), entry(null)));
+        assertEquals(List.of("2", "b"), ids(fresh));
+    }
+
+    @Test
+    void idsWrittenPastTheHeaderPositionAreCaughtUpFromTheLog() throws IOException {
+        SegmentedEventLog log = new SegmentedEventLog(directory, 1 << 20, MAPPER);
+        EventIdIndex index = new EventIdIndex(directory);
+        index.load(log);
+        List<LogEntry> first = entries(1, 3);
+        log.append(first);
+        index.record(first, log.end());
+        // A crash after the next batch reached the log but before the index recorded it
+        log.append(entries(4, 3));
+        log.append(List.of(entry("x-7")));
+
+        EventIdIndex reloaded = new EventIdIndex(directory);
+        reloaded.load(log);
+        assertEquals(7, reloaded.size());
+        assertTrue(reloaded.contains("6"));
+        assertTrue(reloaded.contains("x-7"));
+        assertEquals(log.end().getOffset(), headerOffset(), "the header covers the caught-up records");
+    }
+
+    @Test
+    void anUnreadableHeaderRebuildsTheIndexFromTheLog() throws IOException {
+        SegmentedEventLog log = new SegmentedEventLog(directory, 1 << 20, MAPPER);
+        EventIdIndex index = new EventIdIndex(directory);
+        index.load(log);
+        List<LogEntry> batch = entries(1, 5);
+        log.append(batch);
+        index.record(batch, log.end());
+
+        Path file = directory.resolve("ids.idx");
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[0] ^= 0x7f;
+        Files.write(file, bytes);
+
+        EventIdIndex reloaded = new EventIdIndex(directory);
+        reloaded.load(log);
+        assertEquals(5, reloaded.size());
+        assertEquals(log.end().getOffset(), headerOffset());
+    }
+
+    @Test
+    void aTornTrailingIdIsIgnoredAndOverwritten() throws IOException {
+        SegmentedEventLog log = new SegmentedEventLog(directory, 1 << 20, MAPPER);
+        EventIdIndex index = new EventIdIndex(directory);
+        index.load(log);
+        List<LogEntry> batch = entries(1, 3);
+        log.append(batch);
+        index.record(batch, log.end());
+        Path file = directory.resolve("ids.idx");
+        Files.write(file, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        EventIdIndex reloaded = new EventIdIndex(directory);
+        reloaded.load(log);
+        assertEquals(3, reloaded.size());
+        List<LogEntry> next = entries(4, 2);
+        log.append(next);
+        reloaded.record(next, log.end());
+        assertEquals(16 + 5 * Long.BYTES, Files.size(file));
+
+        EventIdIndex again = new EventIdIndex(directory);
+        again.load(log);
+        assertEquals(5, again.size());
+        assertTrue(again.contains("5"));
+    }
+
+    @Test
+    void duplicatesAreDroppedAcrossRestarts() throws IOException {
+        AppConfig.StorageConfig config = new AppConfig.StorageConfig();
+
+        SegmentedEventStore store = new SegmentedEventStore(directory, config, MAPPER);
+        assertEquals(3, store.append(List.of(entry("1"), entry("2"), entry("a"))).size());
+
+        SegmentedEventStore restarted = new SegmentedEventStore(directory, config, MAPPER);
+        List<LogEntry> fresh = restarted.append(List.of(entry("2"), entry("3"), entry("a"), entry("b")));
+        assertEquals(List.of("3", "b"), ids(fresh));
+
+        SegmentedEventStore again = new SegmentedEventStore(directory, config, MAPPER);
+        assertTrue(again.append(List.of(entry("1"), entry("3"), entry("b"))).isEmpty());
+        long[] stored = {0};
+        again.forEach(entry -> stored[0]++);
+        assertEquals(5, stored[0]);
+    }
+
+    private long headerOffset() throws IOException {
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(directory.resolve("ids.idx")), 0, 16);
+        return header.getLong(8);
+    }
+
+    private static LogEntry entry(String id) {
+        return new LogEntry(id, "PushEvent", new LogEntry.Actor("octocat"));
+    }
+
+    private static List<String> ids(List<LogEntry> entries) {
+        return entries.stream().map(LogEntry::getId).collect(Collectors.toList());
+    }
+}
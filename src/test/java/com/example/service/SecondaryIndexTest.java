@@ -0,0 +1,148 @@
+package com.example.service;
+
+import com.example.AppConfig.AppConfig;
+import com.example.model.LogEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SecondaryIndexTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // GitHub allows 39-character owners and 100-character repo names
+    private static final String LONG_REPO = "o".repeat(39) + "/" + "r".repeat(100);
+    private static final String NON_ASCII_REPO = "équipe/dépôt-数据-" + "é".repeat(100);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void longAndNonAsciiRepoNamesAreIndexed() throws IOException {
+        SegmentedEventStore store = new SegmentedEventStore(directory, new AppConfig.StorageConfig(), MAPPER);
+        store.append(List.of(entry("1", LONG_REPO), entry("2", NON_ASCII_REPO), entry("3", "octo/octo"),
+                entry("4", LONG_REPO.toUpperCase())));
+
+        SecondaryIndex index = new SecondaryIndex(directory);
+        index.open(new SegmentedEventLog(directory, 1 << 20, MAPPER));
+        assertNotNull(index.candidates(new LogQuery(null, null, LONG_REPO, null, null)), "answered from the index");
+
+        assertEquals(List.of("1", "4"), ids(store, new LogQuery(null, null, LONG_REPO, null, null)));
+        assertEquals(List.of("2"), ids(store, new LogQuery(null, null, NON_ASCII_REPO.toUpperCase(), null, null)));
+        assertEquals(List.of("3"), ids(store, new LogQuery(null, null, "Octo/Octo", null, null)));
+    }
+
+    @Test
+    void indexedQueriesMatchAScanAfterARestart() throws IOException {
+        AppConfig.StorageConfig config = new AppConfig.StorageConfig();
+        SegmentedEventStore store = new SegmentedEventStore(directory, config, MAPPER);
+        List<LogEntry> batch = new ArrayList<>();
+        for (int id = 1; id <= 600; id++) {
+            batch.add(new LogEntry(String.valueOf(id), id % 3 == 0 ? "WatchEvent" : "PushEvent",
+                    new LogEntry.Actor("user" + id % 17), new LogEntry.Repo(id % 5 == 0 ? LONG_REPO : "org/repo" + id % 4),
+                    "2024-05-01T00:00:00Z"));
+            if (batch.size() == 25) {
+                store.append(batch);
+                batch = new ArrayList<>();
+            }
+        }
+
+        SegmentedEventStore restarted = new SegmentedEventStore(directory, config, MAPPER);
+        for (LogQuery query : new LogQuery[]{
+                new LogQuery("pushevent", null, null, null, null),
+                new LogQuery(null, "ser1", null, null, null),
+                new LogQuery("WatchEvent", "user3", LONG_REPO, null, null),
+                new LogQuery(null, null, "ORG/REPO2", null, null)}) {
+            List<String> scanned = new ArrayList<>();
+            restarted.forEach(entry -> {
+                if (query.matches(entry)) {
+                    scanned.add(entry.getId());
+                }
+            });
+            assertEquals(scanned, ids(restarted, query));
+        }
+        assertEquals(List.of("0/locations.idx", "0/postings.dat", "0/postings.dir", "0/times.idx", "0/zones.idx",
+                "checkpoint"), indexFiles(), "no per-key files");
+    }
+
+    @Test
+    void pruningDropsTheEntriesOfDeletedSegments() throws IOException {
+        AppConfig.StorageConfig config = new AppConfig.StorageConfig();
+        config.segmentMaxBytes = 64 * 1024;
+        SegmentedEventStore store = new SegmentedEventStore(directory, config, MAPPER);
+        List<LogEntry> batch = new ArrayList<>();
+        for (int id = 1; id <= 10_000; id++) {
+            batch.add(new LogEntry(String.valueOf(id), id % 3 == 0 ? "WatchEvent" : "PushEvent",
+                    new LogEntry.Actor("user" + id % 17), new LogEntry.Repo("org/repo" + id % 4),
+                    Instant.parse("2024-05-01T00:00:00Z").plusSeconds(id).toString()));
+            if (batch.size() == 500) {
+                store.append(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        // As retention would
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                int segment = SegmentedEventLog.segmentNumber(file);
+                if (segment >= 0 && segment < 12) {
+                    Files.delete(file);
+                }
+            }
+        }
+        store.refresh();
+        store.pruneIndexes();
+
+        assertTrue(indexFiles().contains("1/locations.idx"), "rewritten into the next generation");
+        assertFalse(indexFiles().contains("0/locations.idx"), "previous generation deleted");
+        SegmentedEventStore restarted = new SegmentedEventStore(directory, config, MAPPER);
+        for (LogQuery query : new LogQuery[]{
+                new LogQuery("WatchEvent", null, null, null, null),
+                new LogQuery(null, "ser1", "org/repo1", null, null),
+                new LogQuery(null, null, null, Instant.parse("2024-05-01T02:00:00Z"), null),
+                new LogQuery("PushEvent", null, null, Instant.parse("2024-05-01T02:30:00Z"),
+                        Instant.parse("2024-05-01T02:31:00Z"))}) {
+            List<String> scanned = new ArrayList<>();
+            restarted.forEach(entry -> {
+                if (query.matches(entry)) {
+                    scanned.add(entry.getId());
+                }
+            });
+            assertFalse(scanned.isEmpty());
+            assertEquals(scanned, ids(store, query));
+            assertEquals(scanned, ids(restarted, query));
+        }
+    }
+
+    private List<String> indexFiles() throws IOException {
+        Path index = directory.resolve("index");
+        try (Stream<Path> files = Files.walk(index)) {
+            return files.filter(Files::isRegularFile)
+                    .map(file -> index.relativize(file).toString().replace('\\', '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> ids(SegmentedEventStore store, LogQuery query) throws IOException {
+        try (Stream<LogEntry> entries = store.stream(query, false)) {
+            return entries.map(LogEntry::getId).collect(Collectors.toList());
+        }
+    }
+
+    private static LogEntry entry(String id, String repo) {
+        return new LogEntry(id, "PushEvent", new LogEntry.Actor("octocat"), new LogEntry.Repo(repo),
+                "2024-05-01T00:00:00Z");
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.service;
+
+import com.example.model.LogEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentedEventLogTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopeningDropsATornLastRecord() throws IOException {
+        SegmentedEventLog log = open(1 << 20);
+        log.append(entries(1, 3));
+        SegmentedEventLog.Position end = log.end();
+        // A crash in the middle of the next append
+        Files.write(SegmentedEventLog.plainFile(directory, 0), "{\"id\":\"4\",\"type\":\"Pu".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        SegmentedEventLog reopened = open(1 << 20);
+        assertEquals(end.getOffset(), reopened.end().getOffset());
+        assertEquals(end.getOffset(), Files.size(SegmentedEventLog.plainFile(directory, 0)));
+
+        reopened.append(entries(4, 1));
+        assertEquals(List.of("1", "2", "3", "4"), ids(reopened));
+    }
+
+    @Test
+    void refreshLeavesARecordStillBeingWrittenOut() throws IOException {
+        SegmentedEventLog writer = open(1 << 20);
+        writer.append(entries(1, 2));
+        SegmentedEventLog reader = open(1 << 20);
+        SegmentedEventLog.Position end = reader.end();
+
+        Files.write(SegmentedEventLog.plainFile(directory, 0), "{\"id\":\"3\"".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        assertFalse(reader.refresh(), "a partial record is not a change");
+        assertEquals(end.getOffset(), reader.end().getOffset());
+        assertEquals(List.of("1", "2"), ids(reader));
+    }
+
+    @Test
+    void appendReturnsThePositionOfEveryRecord() throws IOException {
+        SegmentedEventLog log = open(600);
+        List<LogEntry> batch = entries(1, 40);
+        List<SegmentedEventLog.Position> positions = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i += 5) {
+            positions.addAll(List.of(log.append(batch.subList(i, i + 5))));
+        }
+        assertTrue(log.end().getSegment() > 0, "the batches span several segments");
+
+        List<String> read = log.read(positions).stream().map(LogEntry::getId).collect(Collectors.toList());
+        assertEquals(ids(batch), read);
+    }
+
+    @Test
+    void byteRangesReadEveryRecordOnceInOrder() throws IOException {
+        SegmentedEventLog log = open(4096);
+        List<LogEntry> batch = entries(1, 300);
+        for (int i = 0; i < batch.size(); i += 30) {
+            log.append(batch.subList(i, i + 30));
+        }
+
+        for (long rangeBytes : new long[]{1, 7, 64, 100, 1000, 1 << 20}) {
+            try (Stream<LogEntry> stream = log.parallelStream(rangeBytes)) {
+                List<String> read = stream.map(LogEntry::getId).collect(Collectors.toList());
+                assertEquals(ids(batch), read, "ranges of " + rangeBytes + " bytes");
+            }
+        }
+    }
+
+    @Test
+    void aRangeHoldsTheRecordsStartingInIt() throws IOException {
+        SegmentedEventLog log = open(1 << 20);
+        SegmentedEventLog.Position[] positions = log.append(entries(1, 5));
+        SegmentedEventLog.Position end = log.end();
+
+        // From a record boundary: that record is the first
+        assertEquals(List.of("2", "3"), read(log, end, positions[1].getOffset(), positions[3].getOffset()));
+        // From inside a record: the next one is the first; a record starting before the end is read whole
+        assertEquals(List.of("3", "4"), read(log, end, positions[1].getOffset() + 1, positions[3].getOffset() + 1));
+        assertEquals(List.of(), read(log, end, positions[2].getOffset() + 1, positions[3].getOffset()));
+        assertEquals(List.of("5"), read(log, end, positions[4].getOffset(), end.getOffset()));
+    }
+
+    @Test
+    void aRangeStopsAtTheEndTheLogHadWhenItWasCreated() throws IOException {
+        SegmentedEventLog log = open(1 << 20);
+        log.append(entries(1, 3));
+        SegmentedEventLog.Position end = log.end();
+        log.append(entries(4, 2));
+
+        assertEquals(List.of("1", "2", "3"), read(log, end, 0, Long.MAX_VALUE));
+    }
+
+    private SegmentedEventLog open(long segmentMaxBytes) throws IOException {
+        return new SegmentedEventLog(directory, segmentMaxBytes, MAPPER);
+    }
+
+    private static List<String> read(SegmentedEventLog log, SegmentedEventLog.Position end, long from, long to)
+            throws IOException {
+        List<String> ids = new ArrayList<>();
+        try (SegmentedEventLog.Cursor cursor = log.new Cursor(end,
+                new SegmentedEventLog.Position(0, from), new SegmentedEventLog.Position(0, to))) {
+            while (cursor.next()) {
+                ids.add(cursor.entry().getId());
+            }
+        }
+        return ids;
+    }
+
+    private static List<String> ids(SegmentedEventLog log) {
+        List<String> ids = new ArrayList<>();
+        log.forEach(entry -> ids.add(entry.getId()));
+        return ids;
+    }
+
+    private static List<String> ids(List<LogEntry> entries) {
+        return entries.stream().map(LogEntry::getId).collect(Collectors.toList());
+    }
+
+    static List<LogEntry> entries(int firstId, int count) {
+        List<LogEntry> entries = new ArrayList<>(count);
+        for (int id = firstId; id < firstId + count; id++) {
+            entries.add(new LogEntry(String.valueOf(id), "PushEvent", new LogEntry.Actor("user" + id % 7),
+                    new LogEntry.Repo("org/repo" + id % 3), "2024-05-01T00:00:00Z"));
+        }
+        return entries;
+    }
+}